@@ -0,0 +1,367 @@
+import java.io.IOException;
+
+/**
+ * The HTTP/1.1 part of a persistent connection: writing requests and reading
+ * responses framed by Content-Length, chunked encoding or connection close.
+ * Subclasses supply the bytes, over a socket stream or a socket channel.
+ */
+public abstract class AbstractHttpConnection implements HttpConnection
+{
+    private static final byte[] HTTP_VERSION = ascii(" HTTP/1.1\r\nHost: ");
+    private static final byte[] KEEP_ALIVE = ascii("\r\nConnection: keep-alive\r\n");
+    private static final byte[] CONTENT_TYPE = ascii("Content-Type: application/json\r\nContent-Length: ");
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] GET = ascii("GET ");
+    private static final byte[] POST = ascii("POST ");
+
+    private final byte[] hostHeader;
+    private final byte[] line = new byte[1024];  // current status or header line
+    private final HttpBody discard = new HttpBody(256);
+    private int useCount;
+    private boolean open = true;
+    private boolean hasDeadline;
+    private long deadline;
+
+    /**
+     * @param host host name or address, without scheme
+     * @param port normally 50000
+     */
+    protected AbstractHttpConnection(String host, int port)
+    {
+        hostHeader = ascii(host + ":" + port);
+    }
+
+    /**
+     * Buffer bytes of the request.
+     */
+    protected abstract void write(byte[] b, int offset, int length) throws IOException;
+
+    /**
+     * Send everything buffered by write.
+     */
+    protected abstract void flush() throws IOException;
+
+    /**
+     * @return the next byte of the response, -1 at end of stream
+     */
+    protected abstract int read() throws IOException;
+
+    /**
+     * Read up to length bytes of the response.
+     * @return number of bytes read, -1 at end of stream
+     */
+    protected abstract int read(byte[] b, int offset, int length) throws IOException;
+
+    /**
+     * Close the underlying socket.
+     */
+    protected abstract void closeSocket() throws IOException;
+
+    /**
+     * The timeout for the next wait on the socket.
+     * @return milliseconds left until the deadline, 0 if there is none
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    protected int remainingMillis() throws DeadlineExceededException
+    {
+        return hasDeadline ? DeadlineExceededException.millisUntil(deadline) : 0;
+    }
+
+    public int get(String path, HttpBody body) throws IOException
+    {
+        try
+        {
+            writeRequestLine(GET, path);
+            write(CRLF, 0, CRLF.length);
+            flush();
+
+            body.clear();
+            return readResponse(body);
+        }
+        catch (DeadlineExceededException e)
+        {
+            // the rest of the response may still arrive, the connection is lost
+            close();
+            throw e;
+        }
+    }
+
+    public int post(String path, byte[] data, int offset, int length) throws IOException
+    {
+        try
+        {
+            writeRequestLine(POST, path);
+            write(CONTENT_TYPE, 0, CONTENT_TYPE.length);
+            writeNumber(length);
+            write(CRLF, 0, CRLF.length);
+            write(CRLF, 0, CRLF.length);
+            write(data, offset, length);
+            flush();
+
+            discard.clear();
+            return readResponse(discard);
+        }
+        catch (DeadlineExceededException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+        hasDeadline = true;
+    }
+
+    public void clearDeadline()
+    {
+        hasDeadline = false;
+    }
+
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    public int getUseCount()
+    {
+        return useCount;
+    }
+
+    public void close()
+    {
+        open = false;
+        try
+        {
+            closeSocket();
+        }
+        catch (IOException e)
+        {
+            // nothing more to do with it
+        }
+    }
+
+    private void writeRequestLine(byte[] method, String path) throws IOException
+    {
+        write(method, 0, method.length);
+
+        // the path is plain ASCII, copy it through the line buffer
+        for (int start = 0; start < path.length(); start += line.length)
+        {
+            int n = Math.min(line.length, path.length() - start);
+            for (int i = 0; i < n; i++)
+                line[i] = (byte)path.charAt(start + i);
+            write(line, 0, n);
+        }
+
+        write(HTTP_VERSION, 0, HTTP_VERSION.length);
+        write(hostHeader, 0, hostHeader.length);
+        write(KEEP_ALIVE, 0, KEEP_ALIVE.length);
+    }
+
+    private void writeNumber(int n) throws IOException
+    {
+        int digits = 1;
+        for (int rest = n / 10; rest > 0; rest /= 10)
+            digits++;
+
+        for (int i = digits - 1; i >= 0; i--)
+        {
+            line[i] = (byte)('0' + n % 10);
+            n /= 10;
+        }
+        write(line, 0, digits);
+    }
+
+    /**
+     * Read status line, headers and body of one response.
+     * @return HTTP status code
+     */
+    private int readResponse(HttpBody body) throws IOException
+    {
+        int n = readLine();
+        if (n < 0)
+        {
+            close();
+            if (useCount > 0)
+                throw new StaleConnectionException("Server closed a kept-alive connection");
+            throw new IOException("Server closed the connection without a response");
+        }
+
+        // "HTTP/1.1 200 OK"
+        if (n < 12 || line[8] != ' ')
+            throw new IOException("Malformed status line");
+
+        boolean keepAlive = line[7] == '1';
+        int status = (line[9] - '0') * 100 + (line[10] - '0') * 10 + (line[11] - '0');
+
+        long contentLength = -1;
+        boolean chunked = false;
+
+        while ((n = readLine()) > 0)
+        {
+            if (headerIs(n, "content-length:"))
+                contentLength = headerNumber(n, "content-length:".length(), 10);
+            else if (headerIs(n, "transfer-encoding:") && headerContains(n, "chunked"))
+                chunked = true;
+            else if (headerIs(n, "connection:"))
+                keepAlive = !headerContains(n, "close");
+        }
+        if (n < 0)
+            throw new IOException("Connection closed in the middle of the headers");
+
+        if (status == 204 || status == 304 || status < 200)
+        {
+            // no body
+        }
+        else if (chunked)
+        {
+            readChunked(body);
+        }
+        else if (contentLength >= 0)
+        {
+            readFully(body, (int)contentLength);
+        }
+        else
+        {
+            readToEnd(body);
+            keepAlive = false;
+        }
+
+        useCount++;
+        if (!keepAlive)
+            close();
+
+        return status;
+    }
+
+    private void readChunked(HttpBody body) throws IOException
+    {
+        int n;
+        long size;
+        while (true)
+        {
+            n = readLine();
+            if (n < 0)
+                throw new IOException("Connection closed in the middle of a chunk");
+
+            size = headerNumber(n, 0, 16);
+            if (size == 0)
+                break;
+
+            readFully(body, (int)size);
+            if (readLine() != 0)
+                throw new IOException("Malformed chunk");
+        }
+
+        // trailers, if any, up to the empty line
+        while ((n = readLine()) > 0)
+            ;
+    }
+
+    private void readFully(HttpBody body, int n) throws IOException
+    {
+        body.ensureCapacity(body.length() + n);
+
+        while (n > 0)
+        {
+            int read = read(body.array(), body.length(), n);
+            if (read < 0)
+                throw new IOException("Connection closed in the middle of a body");
+
+            body.setLength(body.length() + read);
+            n -= read;
+        }
+    }
+
+    private void readToEnd(HttpBody body) throws IOException
+    {
+        int read;
+        do
+        {
+            body.ensureCapacity(body.length() + 1024);
+
+            read = read(body.array(), body.length(), body.array().length - body.length());
+            if (read > 0)
+                body.setLength(body.length() + read);
+        } while (read >= 0);
+    }
+
+    /**
+     * Read one CRLF terminated line into the line buffer.
+     * @return length of the line without CRLF, -1 at end of stream
+     */
+    private int readLine() throws IOException
+    {
+        int n = 0;
+        int c;
+        while ((c = read()) >= 0)
+        {
+            if (c == '\n')
+                return (n > 0 && line[n - 1] == '\r') ? n - 1 : n;
+
+            if (n == line.length)
+                throw new IOException("Header line too long");
+            line[n++] = (byte)c;
+        }
+        return n > 0 ? n : -1;
+    }
+
+    private boolean headerIs(int n, String name)
+    {
+        if (n < name.length())
+            return false;
+
+        for (int i = 0; i < name.length(); i++)
+        {
+            if (Character.toLowerCase((char)line[i]) != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean headerContains(int n, String token)
+    {
+        for (int i = 0; i + token.length() <= n; i++)
+        {
+            int j = 0;
+            while (j < token.length() && Character.toLowerCase((char)line[i + j]) == token.charAt(j))
+                j++;
+            if (j == token.length())
+                return true;
+        }
+        return false;
+    }
+
+    private long headerNumber(int n, int from, int radix) throws IOException
+    {
+        long value = 0;
+        boolean found = false;
+        for (int i = from; i < n; i++)
+        {
+            int digit = Character.digit((char)line[i], radix);
+            if (digit >= 0)
+            {
+                value = value * radix + digit;
+                found = true;
+            }
+            else if (found || line[i] == ';')
+            {
+                break;
+            }
+        }
+        if (!found)
+            throw new IOException("Malformed number in HTTP header");
+
+        return value;
+    }
+
+    private static byte[] ascii(String s)
+    {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte)s.charAt(i);
+        return b;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Decides when to read the next localization. Instead of polling as fast as
+ * possible, it polls just often enough that the robot moves at most a given
+ * distance and turns at most a given angle between two samples: fast on
+ * tight turns, slow on straight runs and slowest when standing still.
+ *
+ * The turn rate counts both the commanded angular speed and the turning the
+ * path ahead will force, linear speed times curvature. Polling faster than
+ * the measured round trip gains nothing, since a new request would only
+ * queue behind the last one, so the round trip is the lower bound.
+ *
+ * Time is read from and waited on a TimeSource, the local clock unless
+ * another one is given, e.g. the clock of a simulated robot.
+ *
+ * The scheduler is meant for one control loop and is not thread-safe.
+ */
+public class AdaptivePollingScheduler
+{
+    private static final double SMOOTHING = 0.1;
+
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final double maxTravel;
+    private final double maxTurn;
+    private final TimeSource time;
+
+    private long intervalNanos;
+    private long roundTripNanos;
+    private long issuedNanos;
+    private boolean issued;
+    private long lastPollNanos;
+
+    private long polls;
+    private double meanIntervalNanos;
+    private long sleptNanos;
+
+    /**
+     * @param minIntervalMillis never poll more often than this
+     * @param maxIntervalMillis never poll less often than this
+     * @param maxTravel meters the robot may move between two samples
+     * @param maxTurn radians the robot may turn between two samples
+     */
+    public AdaptivePollingScheduler(long minIntervalMillis, long maxIntervalMillis,
+                                    double maxTravel, double maxTurn)
+    {
+        this(minIntervalMillis, maxIntervalMillis, maxTravel, maxTurn, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param minIntervalMillis never poll more often than this
+     * @param maxIntervalMillis never poll less often than this
+     * @param maxTravel meters the robot may move between two samples
+     * @param maxTurn radians the robot may turn between two samples
+     * @param time the clock to pace the polls by
+     */
+    public AdaptivePollingScheduler(long minIntervalMillis, long maxIntervalMillis,
+                                    double maxTravel, double maxTurn, TimeSource time)
+    {
+        if (minIntervalMillis > maxIntervalMillis)
+            throw new IllegalArgumentException("Minimum interval above maximum");
+
+        this.minIntervalNanos = minIntervalMillis * 1000000;
+        this.maxIntervalNanos = maxIntervalMillis * 1000000;
+        this.maxTravel = maxTravel;
+        this.maxTurn = maxTurn;
+        this.time = time;
+        intervalNanos = minIntervalNanos;
+    }
+
+    /**
+     * A scheduler for path following at up to a few meters per second:
+     * 5 to 200 ms between polls, 5 cm and 0.05 rad between samples.
+     */
+    public AdaptivePollingScheduler()
+    {
+        this(TimeSource.SYSTEM);
+    }
+
+    /**
+     * The scheduler for path following, paced by another clock.
+     * @param time the clock to pace the polls by
+     */
+    public AdaptivePollingScheduler(TimeSource time)
+    {
+        this(5, 200, 0.05, 0.05, time);
+    }
+
+    /**
+     * Set the interval from the current motion.
+     * @param linearSpeed commanded linear speed, m/s
+     * @param angularSpeed commanded angular speed, rad/s
+     * @param curvatureAhead curvature of the path ahead, 1/m
+     */
+    public void update(double linearSpeed, double angularSpeed, double curvatureAhead)
+    {
+        double v = Math.abs(linearSpeed);
+        double turnRate = Math.max(Math.abs(angularSpeed), v * Math.abs(curvatureAhead));
+
+        double seconds = Double.POSITIVE_INFINITY;
+        if (v > 0)
+            seconds = maxTravel / v;
+        if (turnRate > 0)
+            seconds = Math.min(seconds, maxTurn / turnRate);
+
+        long nanos = seconds * 1e9 >= maxIntervalNanos ? maxIntervalNanos : (long)(seconds * 1e9);
+        nanos = Math.max(nanos, Math.max(minIntervalNanos, roundTripNanos));
+        intervalNanos = Math.min(nanos, maxIntervalNanos);
+    }
+
+    /**
+     * Sleep until the next poll is due, then count it as issued.
+     * @throws InterruptedException
+     */
+    public void awaitNextPoll() throws InterruptedException
+    {
+        long now = time.nanoTime();
+        // a simulated clock may start at 0, so count the polls instead
+        if (polls > 0)
+        {
+            long wait = lastPollNanos + intervalNanos - now;
+            if (wait > 0)
+            {
+                time.sleep(wait);
+                sleptNanos += wait;
+                now = time.nanoTime();
+            }
+
+            long achieved = now - lastPollNanos;
+            meanIntervalNanos = polls == 1 ? achieved
+                    : meanIntervalNanos + SMOOTHING * (achieved - meanIntervalNanos);
+        }
+
+        lastPollNanos = now;
+        issuedNanos = now;
+        issued = true;
+        polls++;
+    }
+
+    /**
+     * Count the response of the last poll as arrived, to measure the round trip.
+     */
+    public void pollCompleted()
+    {
+        if (!issued)
+            return;
+
+        long roundTrip = time.nanoTime() - issuedNanos;
+        roundTripNanos = roundTripNanos == 0 ? roundTrip
+                : (long)(roundTripNanos + SMOOTHING * (roundTrip - roundTripNanos));
+        issued = false;
+    }
+
+    /**
+     * @return the interval the next poll is scheduled with, in milliseconds
+     */
+    public double getIntervalMillis()
+    {
+        return intervalNanos / 1e6;
+    }
+
+    /**
+     * @return the smoothed round trip of the polls, in milliseconds
+     */
+    public double getRoundTripMillis()
+    {
+        return roundTripNanos / 1e6;
+    }
+
+    /**
+     * @return the recent rate of polls actually achieved, per second
+     */
+    public double getAchievedRate()
+    {
+        return meanIntervalNanos > 0 ? 1e9 / meanIntervalNanos : 0;
+    }
+
+    public long getPolls()
+    {
+        return polls;
+    }
+
+    /**
+     * @return total time spent waiting for polls to be due, in milliseconds
+     */
+    public long getSleptMillis()
+    {
+        return sleptNanos / 1000000;
+    }
+
+    public String toString()
+    {
+        return String.format("%d polls, %.1f/s achieved, %.1f ms round trip, %d ms slept",
+                polls, getAchievedRate(), getRoundTripMillis(), getSleptMillis());
+    }
+}
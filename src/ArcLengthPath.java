@@ -0,0 +1,316 @@
+import java.io.IOException;
+
+/**
+ * A path parameterized by arc length. The cumulative length up to every
+ * point and the direction of every segment are computed once, so a point
+ * along the path is found by binary search instead of walking the points.
+ *
+ * The closest point to the robot is searched with a cursor: only the
+ * segments within a window of arc length around the previous answer are
+ * looked at, so the cost per tick does not grow with the length of the path,
+ * and a path that crosses itself does not make the robot jump ahead to a
+ * later part of it.
+ */
+public class ArcLengthPath
+{
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] arcLengths;      // path length up to point i
+    private final double[] ux;              // unit direction of the segment from i to i + 1
+    private final double[] uy;
+    private final int segments;
+
+    private double window = 1;              // meters searched ahead of the cursor
+    private double backWindow = 0.25;       // meters searched behind it
+    private int cursor;                     // segment of the last closest point
+    private double cursorArcLength;
+    private double cursorDistance;          // from the point to the path
+
+    /**
+     * @param xs x of the path points
+     * @param ys y of the path points
+     */
+    public ArcLengthPath(double[] xs, double[] ys)
+    {
+        if (xs.length == 0 || xs.length != ys.length)
+            throw new IllegalArgumentException("Empty or uneven path");
+
+        int n = xs.length;
+        this.xs = xs;
+        this.ys = ys;
+        this.arcLengths = new double[n];
+        this.segments = n - 1;
+        this.ux = new double[Math.max(segments, 1)];
+        this.uy = new double[Math.max(segments, 1)];
+
+        for (int i = 0; i < segments; i++)
+        {
+            double dx = xs[i + 1] - xs[i];
+            double dy = ys[i + 1] - ys[i];
+            double length = Math.sqrt(dx * dx + dy * dy);
+
+            // a repeated point is a segment of length zero without a direction
+            if (length > 0)
+            {
+                ux[i] = dx / length;
+                uy[i] = dy / length;
+            }
+            arcLengths[i + 1] = arcLengths[i] + length;
+        }
+    }
+
+    /**
+     * Read the positions of a path file.
+     * @param filename path file, a JSON array of {"Pose":...} objects
+     * @return the path
+     * @throws IOException if the file can not be read
+     */
+    public static ArcLengthPath load(String filename) throws IOException
+    {
+        PoseArray poses = PoseArray.load(filename);
+        return new ArcLengthPath(poses.copyX(), poses.copyY());
+    }
+
+    /**
+     * Find the closest point on the path, searching only around the
+     * previous closest point, and move the cursor there.
+     * @param px a point, e.g. the position of the robot
+     * @param py
+     * @return arc length of the closest point
+     */
+    public double closest(double px, double py)
+    {
+        int first = indexAt(cursorArcLength - backWindow);
+        double last = cursorArcLength + window;
+
+        // indexAt never goes past the last segment; a single point has none
+        double bestSquared = Double.POSITIVE_INFINITY;
+        for (int i = first; i < segments && arcLengths[i] <= last; i++)
+            bestSquared = project(i, px, py, bestSquared);
+
+        return closestFound(px, py, bestSquared);
+    }
+
+    /**
+     * Find the closest point on the whole path and move the cursor there,
+     * e.g. to start, or after the robot lost the path. Takes time in
+     * proportion to the number of points.
+     * @param px a point, e.g. the position of the robot
+     * @param py
+     * @return arc length of the closest point
+     */
+    public double closestOnWholePath(double px, double py)
+    {
+        double bestSquared = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < segments; i++)
+            bestSquared = project(i, px, py, bestSquared);
+
+        return closestFound(px, py, bestSquared);
+    }
+
+    private double closestFound(double px, double py, double bestSquared)
+    {
+        if (segments == 0)
+        {
+            cursorArcLength = 0;
+            bestSquared = (px - xs[0]) * (px - xs[0]) + (py - ys[0]) * (py - ys[0]);
+        }
+        cursorDistance = Math.sqrt(bestSquared);
+        return cursorArcLength;
+    }
+
+    // move the cursor to segment i if it passes closer than bestSquared
+    private double project(int i, double px, double py, double bestSquared)
+    {
+        double dx = px - xs[i];
+        double dy = py - ys[i];
+        double along = dx * ux[i] + dy * uy[i];
+        along = Math.max(0, Math.min(along, arcLengths[i + 1] - arcLengths[i]));
+
+        double ex = dx - along * ux[i];
+        double ey = dy - along * uy[i];
+        double squared = ex * ex + ey * ey;
+        if (squared < bestSquared)
+        {
+            cursor = i;
+            cursorArcLength = arcLengths[i] + along;
+            return squared;
+        }
+        return bestSquared;
+    }
+
+    /**
+     * @param s an arc length, clamped to the path
+     * @param out receives X and Y of the point at that arc length
+     * @return out
+     */
+    public double[] pointAt(double s, double[] out)
+    {
+        int i = indexAt(s);
+        if (i >= segments)
+        {
+            out[0] = xs[segments];
+            out[1] = ys[segments];
+            return out;
+        }
+
+        double along = Math.max(0, Math.min(s, arcLengths[segments])) - arcLengths[i];
+        out[0] = xs[i] + along * ux[i];
+        out[1] = ys[i] + along * uy[i];
+        return out;
+    }
+
+    /**
+     * Find the target of a pure pursuit controller: the point a given
+     * distance further along the path than the point closest to (px, py).
+     * @param px position of the robot
+     * @param py
+     * @param distance look-ahead distance, in meters
+     * @param out receives X and Y of the target
+     * @return out
+     */
+    public double[] lookAhead(double px, double py, double distance, double[] out)
+    {
+        return pointAt(closest(px, py) + distance, out);
+    }
+
+    /**
+     * Find the first path point, beyond the point closest to (px, py), that
+     * is at least a given distance away from (px, py), the way the path
+     * followers pick the point to head for. Points less far along the path
+     * than that distance minus the distance to the path can not be far
+     * enough away, so they are skipped by binary search.
+     * @param px position of the robot
+     * @param py
+     * @param distance look-ahead distance, in meters
+     * @return index of the point, the last point if none is far enough away
+     */
+    public int lookAheadIndex(double px, double py, double distance)
+    {
+        double s = closest(px, py);
+        int i = indexAfter(s + distance - cursorDistance);
+        double squared = distance * distance;
+
+        while (i < segments && (xs[i] - px) * (xs[i] - px) + (ys[i] - py) * (ys[i] - py) < squared)
+            i++;
+        return i;
+    }
+
+    /**
+     * @param s an arc length
+     * @return index of the last path point at or before s, at most the
+     *         start of the last segment; 0 for s before the start
+     */
+    public int indexAt(double s)
+    {
+        int low = 0;
+        int high = Math.max(segments - 1, 0);
+
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (arcLengths[middle] <= s)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * @param s an arc length
+     * @return index of the first path point at or beyond s, the last point
+     *         if s is beyond the end
+     */
+    public int indexAfter(double s)
+    {
+        int low = 0;
+        int high = segments;
+
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (arcLengths[middle] >= s)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    /**
+     * Move the cursor, e.g. back to the start for another lap.
+     * @param s arc length to search around from now on
+     */
+    public void setCursor(double s)
+    {
+        cursorArcLength = Math.max(0, Math.min(s, arcLengths[segments]));
+        cursor = Math.min(indexAt(cursorArcLength), Math.max(segments - 1, 0));
+    }
+
+    /**
+     * @param ahead meters of path searched ahead of the last closest point
+     * @param behind meters searched behind it
+     */
+    public void setWindow(double ahead, double behind)
+    {
+        this.window = ahead;
+        this.backWindow = behind;
+    }
+
+    /**
+     * @return segment of the last closest point, from point i to i + 1
+     */
+    public int getCursor()
+    {
+        return cursor;
+    }
+
+    /**
+     * @return arc length of the last closest point
+     */
+    public double getCursorArcLength()
+    {
+        return cursorArcLength;
+    }
+
+    /**
+     * @return distance from the last point searched for to the path
+     */
+    public double getCursorDistance()
+    {
+        return cursorDistance;
+    }
+
+    /**
+     * @return length of the whole path, in meters
+     */
+    public double length()
+    {
+        return arcLengths[segments];
+    }
+
+    public int size()
+    {
+        return xs.length;
+    }
+
+    public double getX(int i)
+    {
+        return xs[i];
+    }
+
+    public double getY(int i)
+    {
+        return ys[i];
+    }
+
+    /**
+     * @param i a path point
+     * @return length of the path up to that point
+     */
+    public double getArcLength(int i)
+    {
+        return arcLengths[i];
+    }
+}
@@ -1,27 +1,54 @@
+import java.io.IOException;
 import java.util.Map;
 
-public class BatteryResponse implements Response
-{
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-    private Map<String, Object> data;
+public class BatteryResponse implements StreamingResponse
+{
+    // overwritten by every response
+    private double remaining;
+    private double status;
+    private long timestamp;
 
     public void setData(Map<String, Object> data)
     {
-        this.data = data;
+        remaining = LokarriaJson.toDouble(data.get("Remaining"));
+        status = LokarriaJson.toDouble(data.get("Status"));
+        timestamp = LokarriaJson.toLong(data.get("TimeStamp"));
     }
 
-    public double getRemaining()
+    public void readFrom(JsonParser parser) throws IOException
     {
+        LokarriaJson.startObject(parser);
+        remaining = 0;
+        status = 0;
+        timestamp = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
 
-//      System.out.println(data.get("Remaining"));
-//      
-//      return 0;
-        return ((Integer)data.get("Remaining")).doubleValue();
+            if ("Remaining".equals(name))
+                remaining = LokarriaJson.readDouble(parser);
+            else if ("Status".equals(name))
+                status = LokarriaJson.readDouble(parser);
+            else if ("TimeStamp".equals(name))
+                timestamp = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
+    }
+
+    public double getRemaining()
+    {
+        return remaining;
     }
 
     public double getStatus()
     {
-        return Double.parseDouble( (String)data.get("Status") );
+        return status;
     }
 
     public String getPath()
@@ -31,8 +58,8 @@ public class BatteryResponse implements Response
 
     public long getTimestamp()
     {
-        return (Long)data.get("TimeStamp");
+        return timestamp;
     }
 
 
-}
\ No newline at end of file
+}
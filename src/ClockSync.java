@@ -0,0 +1,94 @@
+/**
+ * Estimates the offset between the robot clock (the TimeStamp of the
+ * responses, in milliseconds) and the local System.nanoTime clock, or the
+ * TimeSource of a simulation.
+ *
+ * Every response gives a sample: the robot read its clock somewhere between
+ * sending the request and receiving the answer, most likely in the middle.
+ * The sample with the shortest round trip in a recent window bounds that
+ * guess the tightest, so its offset is used, as NTP does. The robot clock
+ * is assumed to run at real time.
+ */
+public class ClockSync
+{
+    private static final int WINDOW = 64;
+
+    private final long[] offsets = new long[WINDOW];    // robot minus local, nanoseconds
+    private final long[] roundTrips = new long[WINDOW];
+    private int samples;
+    private int next;
+
+    private long offset;
+    private long bestRoundTrip;
+
+    /**
+     * Add a sample.
+     * @param sendNanos System.nanoTime() when the request was sent
+     * @param receiveNanos System.nanoTime() when the response arrived
+     * @param robotMillis TimeStamp of the response
+     */
+    public synchronized void addSample(long sendNanos, long receiveNanos, long robotMillis)
+    {
+        long roundTrip = receiveNanos - sendNanos;
+        if (robotMillis <= 0 || roundTrip < 0)
+            return;
+
+        offsets[next] = robotMillis * 1000000 - (sendNanos + roundTrip / 2);
+        roundTrips[next] = roundTrip;
+        next = (next + 1) % WINDOW;
+        if (samples < WINDOW)
+            samples++;
+
+        int best = 0;
+        for (int i = 1; i < samples; i++)
+        {
+            if (roundTrips[i] < roundTrips[best])
+                best = i;
+        }
+        offset = offsets[best];
+        bestRoundTrip = roundTrips[best];
+    }
+
+    /**
+     * @return true once there is at least one sample
+     */
+    public synchronized boolean isSynchronized()
+    {
+        return samples > 0;
+    }
+
+    /**
+     * @param localNanos a System.nanoTime() value
+     * @return the robot time at that moment, in milliseconds
+     */
+    public synchronized double toRobotMillis(long localNanos)
+    {
+        return (localNanos + offset) / 1e6;
+    }
+
+    /**
+     * @param robotMillis a robot TimeStamp
+     * @return the System.nanoTime() value at that moment
+     */
+    public synchronized long toLocalNanos(double robotMillis)
+    {
+        return (long)(robotMillis * 1e6) - offset;
+    }
+
+    /**
+     * @return robot clock minus local clock, in nanoseconds
+     */
+    public synchronized long getOffsetNanos()
+    {
+        return offset;
+    }
+
+    /**
+     * @return half the best round trip in the window, the largest error of
+     *         the offset if the robot answers at some point within it
+     */
+    public synchronized long getUncertaintyNanos()
+    {
+        return bestRoundTrip / 2;
+    }
+}
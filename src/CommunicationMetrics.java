@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics for every Lokarria path used through one RobotCommunication.
+ * The metrics of a path are created on its first request; after that,
+ * looking them up and recording do not allocate.
+ */
+public class CommunicationMetrics
+{
+    private final ConcurrentHashMap<String, EndpointMetrics> endpoints =
+            new ConcurrentHashMap<String, EndpointMetrics>();
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * @param path Lokarria path
+     * @return the metrics of the path, created if needed
+     */
+    public EndpointMetrics endpoint(String path)
+    {
+        EndpointMetrics m = endpoints.get(path);
+        if (m == null)
+        {
+            m = new EndpointMetrics(path);
+            EndpointMetrics raced = endpoints.putIfAbsent(path, m);
+            if (raced != null)
+                m = raced;
+        }
+        return m;
+    }
+
+    /**
+     * @return a snapshot of every path, sorted by path
+     */
+    public List<MetricsSnapshot> snapshot()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        List<MetricsSnapshot> result = new ArrayList<MetricsSnapshot>();
+        for (EndpointMetrics m : endpoints.values())
+            result.add(new MetricsSnapshot(m, seconds));
+
+        Collections.sort(result, new Comparator<MetricsSnapshot>()
+        {
+            public int compare(MetricsSnapshot a, MetricsSnapshot b)
+            {
+                return a.getPath().compareTo(b.getPath());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Start counting from zero again.
+     */
+    public void reset()
+    {
+        for (EndpointMetrics m : endpoints.values())
+            m.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return a table of all paths, one line each
+     */
+    public String report()
+    {
+        StringBuilder sb = new StringBuilder(MetricsSnapshot.header());
+        for (MetricsSnapshot s : snapshot())
+            sb.append('\n').append(s);
+        return sb.toString();
+    }
+}
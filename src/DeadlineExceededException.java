@@ -0,0 +1,32 @@
+import java.net.SocketTimeoutException;
+
+/**
+ * Thrown when a request with a deadline has not been answered by the time
+ * the deadline passes. The connection it was sent on is closed, as the
+ * answer may still be on its way; whether the robot acted on a POST is not
+ * known.
+ */
+public class DeadlineExceededException extends SocketTimeoutException
+{
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message)
+    {
+        super(message);
+    }
+
+    /**
+     * @param deadline a System.nanoTime() value
+     * @return whole milliseconds left until the deadline, rounded up, for use
+     *         as a socket timeout
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    static int millisUntil(long deadline) throws DeadlineExceededException
+    {
+        long left = deadline - System.nanoTime();
+        if (left <= 0)
+            throw new DeadlineExceededException("Deadline passed");
+
+        return (int)Math.min(Integer.MAX_VALUE, (left + 999999) / 1000000);
+    }
+}
@@ -1,34 +1,63 @@
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.Map;
 
-public class DifferentialDriveRequest implements Request
+public class DifferentialDriveRequest implements EncodableRequest
 {
-    private HashMap<String, Object> data;
+    // the JSON body with the two numbers left out
+    private static final byte[] LINEAR_SPEED =
+            "{\"TargetLinearSpeed\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ANGULAR_SPEED =
+            ",\"TargetAngularSpeed\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "}".getBytes(StandardCharsets.US_ASCII);
+
+    private double linearSpeed;
+    private double angularSpeed;
 
     public DifferentialDriveRequest()
     {
-        data = new HashMap<String, Object>();
-
         setLinearSpeed(0);
         setAngularSpeed(0);
     }
 
     public void setLinearSpeed(double linearSpeed)
     {
-        data.put("TargetLinearSpeed", linearSpeed);
+        this.linearSpeed = linearSpeed;
     }
 
     public void setAngularSpeed(double angularSpeed)
     {
-        data.put("TargetAngularSpeed", angularSpeed);
+        this.angularSpeed = angularSpeed;
+    }
+
+    public double getLinearSpeed()
+    {
+        return linearSpeed;
+    }
+
+    public double getAngularSpeed()
+    {
+        return angularSpeed;
     }
 
     public HashMap<String, Object> getData()
     {
+        HashMap<String, Object> data = new HashMap<String, Object>();
+
+        data.put("TargetLinearSpeed", linearSpeed);
+        data.put("TargetAngularSpeed", angularSpeed);
+
         return data;
     }
 
+    public void writeTo(HttpBody body)
+    {
+        body.append(LINEAR_SPEED, 0, LINEAR_SPEED.length);
+        body.appendNumber(linearSpeed);
+        body.append(ANGULAR_SPEED, 0, ANGULAR_SPEED.length);
+        body.appendNumber(angularSpeed);
+        body.append(END, 0, END.length);
+    }
+
     public String getPath()
     {
         return "/lokarria/differentialdrive";
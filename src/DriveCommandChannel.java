@@ -0,0 +1,323 @@
+/**
+ * Sends differential drive commands to the robot from a dedicated thread.
+ *
+ * The channel holds a single-slot mailbox: a command that has not been sent
+ * yet is overwritten by a newer one, so the robot always gets the latest
+ * wheel speeds and the controller never waits on the network. A command
+ * within epsilon of the last one sent is not sent at all. A stop command is
+ * only suppressed if the robot was already told to stop exactly.
+ *
+ * With a maximum command age, a command that could not be sent within that
+ * time of being submitted, e.g. because the link stalled, is dropped as
+ * expired rather than acted upon late. A stop is never too old: it is sent
+ * without a deadline, and one that fails is tried again a few times unless
+ * a newer command replaces it, also after close.
+ */
+public class DriveCommandChannel
+{
+    private static final int STOP_ATTEMPTS = 5;
+    private static final long STOP_RETRY_MILLIS = 50;
+
+    private final RobotCommunication robotcomm;
+    private final double epsilon;
+    private final long maxAgeNanos;
+    private final DifferentialDriveRequest request;
+    private final Thread sender;
+
+    // the mailbox, guarded by this
+    private double pendingLinear;
+    private double pendingAngular;
+    private long pendingSubmitted;
+    private boolean hasPending;
+    private boolean sending;
+    private boolean closed;
+
+    // only touched by the sender thread
+    private double sentLinear = Double.NaN;
+    private double sentAngular = Double.NaN;
+    private int stopAttempts;
+
+    private long submitted;
+    private long sent;
+    private long overwritten;
+    private long suppressed;
+    private long failed;
+    private long expired;
+
+    /**
+     * Create a channel and start its sender thread.
+     * @param robotcomm connection to the robot
+     * @param epsilon smallest change in either speed that is worth sending
+     */
+    public DriveCommandChannel(RobotCommunication robotcomm, double epsilon)
+    {
+        this(robotcomm, epsilon, 0);
+    }
+
+    /**
+     * Create a channel and start its sender thread.
+     * @param robotcomm connection to the robot
+     * @param epsilon smallest change in either speed that is worth sending
+     * @param maxAgeMillis drop commands not sent this long after submit, 0 for never
+     */
+    public DriveCommandChannel(RobotCommunication robotcomm, double epsilon, long maxAgeMillis)
+    {
+        this.robotcomm = robotcomm;
+        this.epsilon = epsilon;
+        this.maxAgeNanos = maxAgeMillis * 1000000;
+        request = new DifferentialDriveRequest();
+
+        sender = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                sendLoop();
+            }
+        }, "drive-command-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Post new wheel speeds, replacing any command not sent yet.
+     * @param linearSpeed
+     * @param angularSpeed
+     */
+    public synchronized void submit(double linearSpeed, double angularSpeed)
+    {
+        if (closed)
+            throw new IllegalStateException("Drive command channel is closed");
+
+        if (hasPending)
+            overwritten++;
+
+        pendingLinear = linearSpeed;
+        pendingAngular = angularSpeed;
+        pendingSubmitted = System.nanoTime();
+        hasPending = true;
+        submitted++;
+
+        notifyAll();
+    }
+
+    /**
+     * Wait until the last submitted command has been sent or dropped.
+     * @throws InterruptedException
+     */
+    public synchronized void flush() throws InterruptedException
+    {
+        while (hasPending || sending)
+            wait();
+    }
+
+    /**
+     * Send the last submitted command, then stop the sender thread. A stop
+     * that fails is tried again before the thread ends.
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        sender.join();
+    }
+
+    public synchronized long getSubmittedCount()
+    {
+        return submitted;
+    }
+
+    public synchronized long getSentCount()
+    {
+        return sent;
+    }
+
+    /**
+     * @return commands replaced by a newer one before they could be sent
+     */
+    public synchronized long getOverwrittenCount()
+    {
+        return overwritten;
+    }
+
+    /**
+     * @return commands not sent because they were within epsilon of the last one
+     */
+    public synchronized long getSuppressedCount()
+    {
+        return suppressed;
+    }
+
+    /**
+     * @return commands that never reached the robot, overwritten or suppressed
+     */
+    public synchronized long getDroppedCount()
+    {
+        return overwritten + suppressed;
+    }
+
+    public synchronized long getFailedCount()
+    {
+        return failed;
+    }
+
+    /**
+     * @return commands dropped because they were older than the maximum age
+     */
+    public synchronized long getExpiredCount()
+    {
+        return expired;
+    }
+
+    public String toString()
+    {
+        return "submitted " + getSubmittedCount() + ", sent " + getSentCount()
+                + ", overwritten " + getOverwrittenCount()
+                + ", suppressed " + getSuppressedCount()
+                + ", expired " + getExpiredCount()
+                + ", failed " + getFailedCount();
+    }
+
+    private void sendLoop()
+    {
+        double linear;
+        double angular;
+        long submittedAt;
+
+        while (true)
+        {
+            synchronized (this)
+            {
+                while (!hasPending && !closed)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                if (!hasPending)
+                    return;
+
+                linear = pendingLinear;
+                angular = pendingAngular;
+                submittedAt = pendingSubmitted;
+                hasPending = false;
+                sending = true;
+            }
+
+            boolean stop = linear == 0 && angular == 0;
+            boolean send = !isSameCommand(linear, angular, sentLinear, sentAngular, epsilon);
+            boolean ok = false;
+            boolean late = false;
+            boolean retry = false;
+            if (send)
+            {
+                request.setLinearSpeed(linear);
+                request.setAngularSpeed(angular);
+
+                try
+                {
+                    int rc;
+                    if (maxAgeNanos > 0 && !stop)
+                        rc = robotcomm.putRequest(request, submittedAt + maxAgeNanos);
+                    else
+                        rc = robotcomm.putRequest(request);
+                    late = rc == RobotCommunication.EXPIRED;
+
+                    // a rejected command counts as failed, so it is sent again
+                    if (rc >= 400)
+                        System.err.println("Drive command failed with response code " + rc);
+                    else if (!late)
+                    {
+                        sentLinear = linear;
+                        sentAngular = angular;
+                        ok = true;
+                    }
+                }
+                catch (DeadlineExceededException e)
+                {
+                    // counted as too old; it may have reached the robot, so
+                    // the sent state is forgotten and the next command goes out
+                    sentLinear = Double.NaN;
+                    late = true;
+                }
+                catch (Exception e)
+                {
+                    sentLinear = Double.NaN;
+                    e.printStackTrace();
+                }
+            }
+
+            synchronized (this)
+            {
+                if (!send)
+                    suppressed++;
+                else if (late)
+                    expired++;
+                else if (ok)
+                    sent++;
+                else
+                    failed++;
+
+                // the robot must not be left driving: send a failed stop
+                // again, unless something newer is waiting
+                if (send && !ok && stop && !hasPending && ++stopAttempts < STOP_ATTEMPTS)
+                {
+                    pendingLinear = 0;
+                    pendingAngular = 0;
+                    pendingSubmitted = submittedAt;
+                    hasPending = true;
+                    retry = true;
+                }
+                else
+                {
+                    stopAttempts = 0;
+                }
+
+                sending = false;
+                notifyAll();
+            }
+
+            if (retry)
+            {
+                try
+                {
+                    Thread.sleep(STOP_RETRY_MILLIS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The rule for a drive command not worth sending, shared by everything
+     * that sends drive commands: both speeds are within epsilon of the last
+     * command sent. A stop is only left out if the robot was already told
+     * to stop exactly.
+     * @param linear speeds of the new command
+     * @param angular
+     * @param sentLinear speeds of the last command sent, NaN if none was
+     * @param sentAngular
+     * @param epsilon smallest change in either speed that is worth sending
+     * @return true if the new command can be left out
+     */
+    static boolean isSameCommand(double linear, double angular,
+                                 double sentLinear, double sentAngular, double epsilon)
+    {
+        if (linear == 0 && angular == 0)
+            return sentLinear == 0 && sentAngular == 0;
+
+        return Math.abs(linear - sentLinear) <= epsilon
+                && Math.abs(angular - sentAngular) <= epsilon;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures what it costs to turn one drive command into request body bytes,
+ * the old way (HashMap, Jackson, String, OutputStreamWriter) against the
+ * byte template of DifferentialDriveRequest. No network is involved.
+ *
+ * Allocation is read from the HotSpot thread MXBean, so the numbers are only
+ * printed on JVMs that support it.
+ */
+public class DriveEncodingBenchmark
+{
+    private static final int WARMUP = 200000;
+    private static final int COMMANDS = 1000000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream(256);
+    private final DifferentialDriveRequest request = new DifferentialDriveRequest();
+    private final HttpBody body = new HttpBody(256);
+    private long checksum;
+
+    public static void main(String[] args) throws Exception
+    {
+        DriveEncodingBenchmark b = new DriveEncodingBenchmark();
+
+        b.measure("map + Jackson", false);
+        b.measure("byte template", true);
+    }
+
+    private void measure(String name, boolean template) throws Exception
+    {
+        run(template, WARMUP);
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        run(template, COMMANDS);
+        long nanos = System.nanoTime() - start;
+        long bytes = bytesBefore < 0 ? -1 : allocatedBytes() - bytesBefore;
+
+        System.out.println(name + ": " + (nanos / COMMANDS) + " ns/command, "
+                + (bytes < 0 ? "n/a" : Long.toString(bytes / COMMANDS))
+                + " bytes allocated/command (checksum " + checksum + ")");
+    }
+
+    private void run(boolean template, int n) throws Exception
+    {
+        for (int i = 0; i < n; i++)
+        {
+            double linear = (i % 100) * 0.01;
+            double angular = (i % 628) * 0.01 - Math.PI;
+
+            if (template)
+                encodeTemplate(linear, angular);
+            else
+                encodeMap(linear, angular);
+        }
+    }
+
+    // what RobotCommunication and DifferentialDriveRequest used to do
+    private void encodeMap(double linear, double angular) throws Exception
+    {
+        HashMap<String, Object> data = new HashMap<String, Object>();
+        data.put("TargetLinearSpeed", linear);
+        data.put("TargetAngularSpeed", angular);
+
+        String json = mapper.writeValueAsString(data);
+
+        sink.reset();
+        OutputStreamWriter out = new OutputStreamWriter(sink);
+        out.write(json);
+        out.close();
+
+        checksum += sink.size();
+    }
+
+    private void encodeTemplate(double linear, double angular)
+    {
+        request.setLinearSpeed(linear);
+        request.setAngularSpeed(angular);
+
+        body.clear();
+        request.writeTo(body);
+
+        checksum += body.length();
+    }
+
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+}
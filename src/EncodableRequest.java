@@ -0,0 +1,13 @@
+/**
+ * A request that can write its own JSON body into a byte buffer.
+ * RobotCommunication uses this instead of serializing the Map from getData,
+ * so sending the request creates no Map, no String and no boxed numbers.
+ */
+public interface EncodableRequest extends Request
+{
+    /**
+     * Append the JSON body of the request.
+     * @param body buffer to write to
+     */
+    public void writeTo(HttpBody body);
+}
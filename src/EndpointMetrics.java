@@ -0,0 +1,159 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and a latency histogram for one Lokarria path. Recording does not
+ * lock or allocate.
+ */
+public class EndpointMetrics
+{
+    private final String path;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private volatile long hedgeDelay;
+
+    public EndpointMetrics(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * Count a completed request.
+     * @param nanos round trip time
+     * @param sent body bytes sent
+     * @param received body bytes received
+     */
+    public void recordSuccess(long nanos, int sent, int received)
+    {
+        requests.incrementAndGet();
+        latency.record(nanos);
+        bytesSent.addAndGet(sent);
+        bytesReceived.addAndGet(received);
+    }
+
+    /**
+     * Count a failed request.
+     * @param nanos time until the failure
+     */
+    public void recordError(long nanos)
+    {
+        requests.incrementAndGet();
+        errors.incrementAndGet();
+        latency.record(nanos);
+    }
+
+    /**
+     * Count a request dropped unsent because its deadline had passed.
+     */
+    public void recordExpired()
+    {
+        expired.incrementAndGet();
+    }
+
+    /**
+     * Count a response that was older than the freshness bound.
+     */
+    public void recordStale()
+    {
+        stale.incrementAndGet();
+    }
+
+    /**
+     * Count a second read started because the first one was slow.
+     */
+    public void recordHedge()
+    {
+        hedges.incrementAndGet();
+    }
+
+    /**
+     * Count a second read that answered before the first one.
+     */
+    public void recordHedgeWin()
+    {
+        hedgeWins.incrementAndGet();
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public long getErrors()
+    {
+        return errors.get();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    public long getExpired()
+    {
+        return expired.get();
+    }
+
+    public long getStale()
+    {
+        return stale.get();
+    }
+
+    public long getHedges()
+    {
+        return hedges.get();
+    }
+
+    public long getHedgeWins()
+    {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return current hedge delay in nanoseconds, 0 if not computed yet
+     */
+    public long getHedgeDelay()
+    {
+        return hedgeDelay;
+    }
+
+    public void setHedgeDelay(long nanos)
+    {
+        hedgeDelay = nanos;
+    }
+
+    public void reset()
+    {
+        latency.reset();
+        requests.set(0);
+        errors.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        expired.set(0);
+        stale.set(0);
+        hedges.set(0);
+        hedgeWins.set(0);
+        hedgeDelay = 0;
+    }
+}
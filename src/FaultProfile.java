@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * Network misbehaviour to inject on one Lokarria path of the stand-in
+ * server: a fixed latency, random jitter on top of it, occasional long
+ * stalls and a rate of failed requests.
+ */
+public class FaultProfile
+{
+    /** No injected faults */
+    public static final FaultProfile NONE = new FaultProfile(0, 0, 0, 0, 0);
+
+    private final double latencyMillis;
+    private final double jitterMillis;
+    private final double stallProbability;
+    private final double stallMillis;
+    private final double errorRate;
+
+    /**
+     * @param latencyMillis added to every request
+     * @param jitterMillis up to this much more, uniformly distributed
+     * @param stallProbability chance that a request stalls
+     * @param stallMillis length of a stall
+     * @param errorRate chance that a request fails with HTTP 500
+     */
+    public FaultProfile(double latencyMillis, double jitterMillis,
+                        double stallProbability, double stallMillis, double errorRate)
+    {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.stallProbability = stallProbability;
+        this.stallMillis = stallMillis;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param random source of randomness
+     * @return how long to hold the next request, in milliseconds
+     */
+    public double nextDelayMillis(Random random)
+    {
+        double delay = latencyMillis + jitterMillis * random.nextDouble();
+        if (stallProbability > 0 && random.nextDouble() < stallProbability)
+            delay += stallMillis;
+        return delay;
+    }
+
+    /**
+     * @param random source of randomness
+     * @return true if the next request should fail
+     */
+    public boolean nextIsError(Random random)
+    {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    public String toString()
+    {
+        return "latency " + latencyMillis + " ms, jitter " + jitterMillis
+                + " ms, stalls " + stallProbability + " x " + stallMillis
+                + " ms, errors " + errorRate;
+    }
+}
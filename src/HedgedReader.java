@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a Lokarria path with a hedge: if the read has not finished within a
+ * percentile of the recent latency of the path, a second identical read is
+ * started on another connection and whichever answers first without an
+ * error status is used. Only if neither does is the error of the last one
+ * to finish returned.
+ *
+ * Both reads run on the executor, which must be able to run them while the
+ * caller waits. The slower read is left to finish on its own, its body
+ * buffer goes back to a shared pool.
+ */
+class HedgedReader
+{
+    // percentiles are only trusted after this many samples
+    private static final long MIN_SAMPLES = 32;
+    // how often the hedge delay of a path is recomputed
+    private static final long DELAY_REFRESH = 64;
+
+    private final Transport transport;
+    private final Executor executor;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final ConcurrentLinkedQueue<HttpBody> spareBodies = new ConcurrentLinkedQueue<HttpBody>();
+
+    /**
+     * @param transport transport to read through
+     * @param executor runs the reads
+     * @param percentile fraction of reads expected to finish before hedging, e.g. 0.95
+     * @param minDelayNanos never hedge before this
+     */
+    HedgedReader(Transport transport, Executor executor, double percentile, long minDelayNanos)
+    {
+        this.transport = transport;
+        this.executor = executor;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelayNanos;
+    }
+
+    /**
+     * Read a path, hedging once the path has enough latency history.
+     * @param path path of the resource
+     * @param m metrics of the path, for the delay and the hedge counts
+     * @param body receives the winning response body
+     * @return HTTP status code of the winning read
+     */
+    int get(String path, EndpointMetrics m, HttpBody body) throws Exception
+    {
+        long delay = delayFor(m);
+        if (delay <= 0)
+            return transport.get(path, body);
+
+        // the hedge is counted from the start, so a primary that fails before
+        // the hedge is started does not end the race
+        Race race = new Race();
+        race.outstanding.set(2);
+        executor.execute(new Read(path, race, false));
+
+        Read winner;
+        try
+        {
+            winner = race.winner.get(delay, TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            executor.execute(new Read(path, race, true));
+            m.recordHedge();
+
+            winner = await(race);
+        }
+        catch (ExecutionException e)
+        {
+            throw unwrap(e);
+        }
+
+        if (winner.hedge)
+            m.recordHedgeWin();
+
+        body.clear();
+        body.append(winner.body.array(), 0, winner.body.length());
+        spareBodies.offer(winner.body);
+
+        return winner.rc;
+    }
+
+    private Read await(Race race) throws Exception
+    {
+        try
+        {
+            return race.winner.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw unwrap(e);
+        }
+    }
+
+    private long delayFor(EndpointMetrics m)
+    {
+        long requests = m.getRequests();
+        if (requests < MIN_SAMPLES)
+            return 0;
+
+        long delay = m.getHedgeDelay();
+        if (delay == 0 || requests % DELAY_REFRESH == 0)
+        {
+            delay = Math.max(minDelayNanos, m.getLatency().getPercentile(percentile));
+            m.setHedgeDelay(delay);
+        }
+        return delay;
+    }
+
+    private static Exception unwrap(ExecutionException e)
+    {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception)
+            return (Exception)cause;
+        return new IOException(cause);
+    }
+
+    /**
+     * The reads of one hedged get, the first successful one wins.
+     * outstanding counts the reads that may still win.
+     */
+    private static final class Race
+    {
+        final CompletableFuture<Read> winner = new CompletableFuture<Read>();
+        final AtomicInteger outstanding = new AtomicInteger();
+    }
+
+    private final class Read implements Runnable
+    {
+        final String path;
+        final Race race;
+        final boolean hedge;
+        final HttpBody body;
+        int rc;
+
+        Read(String path, Race race, boolean hedge)
+        {
+            this.path = path;
+            this.race = race;
+            this.hedge = hedge;
+
+            HttpBody spare = spareBodies.poll();
+            body = spare != null ? spare : new HttpBody();
+        }
+
+        public void run()
+        {
+            try
+            {
+                rc = transport.get(path, body);
+
+                // an error status only ends the race if no other read can still win
+                if ((rc < 400 || race.outstanding.decrementAndGet() == 0)
+                        && race.winner.complete(this))
+                    return;     // the caller hands the body back
+            }
+            catch (Throwable e)
+            {
+                // only an error if no other read can still win
+                if (race.outstanding.decrementAndGet() == 0)
+                    race.winner.completeExceptionally(e);
+            }
+            spareBodies.offer(body);
+        }
+    }
+}
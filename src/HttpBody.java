@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable byte buffer holding one HTTP body. It is meant to be reused
+ * between requests so that reading a response does not allocate once the
+ * buffer has grown to the size of the largest body seen.
+ */
+public class HttpBody
+{
+    private byte[] data;
+    private int length;
+
+    public HttpBody()
+    {
+        this(4096);
+    }
+
+    public HttpBody(int capacity)
+    {
+        data = new byte[capacity];
+    }
+
+    public byte[] array()
+    {
+        return data;
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public void clear()
+    {
+        length = 0;
+    }
+
+    /**
+     * Set the number of valid bytes, after writing into array() directly.
+     * @param length
+     */
+    public void setLength(int length)
+    {
+        if (length < 0 || length > data.length)
+            throw new IndexOutOfBoundsException("Length " + length + " of " + data.length);
+
+        this.length = length;
+    }
+
+    /**
+     * Append everything up to the end of the stream.
+     * @param in stream to read from
+     * @throws IOException
+     */
+    public void readToEnd(InputStream in) throws IOException
+    {
+        int read;
+        do
+        {
+            if (length == data.length)
+                ensureCapacity(length * 2);
+
+            read = in.read(data, length, data.length - length);
+            if (read > 0)
+                length += read;
+        } while (read >= 0);
+    }
+
+    /**
+     * Append a range of bytes.
+     * @param src source buffer
+     * @param offset start in src
+     * @param n number of bytes
+     */
+    public void append(byte[] src, int offset, int n)
+    {
+        ensureCapacity(length + n);
+        System.arraycopy(src, offset, data, length, n);
+        length += n;
+    }
+
+    /**
+     * Append a string of ASCII characters.
+     * @param s
+     */
+    public void appendAscii(String s)
+    {
+        ensureCapacity(length + s.length());
+        for (int i = 0; i < s.length(); i++)
+            data[length++] = (byte)s.charAt(i);
+    }
+
+    /**
+     * Append a number in JSON syntax, rounded to nine decimals. Unlike
+     * Double.toString this does not create a String.
+     * @param value a finite number smaller than 1e9 in magnitude
+     */
+    public void appendNumber(double value)
+    {
+        if (Double.isNaN(value) || Math.abs(value) >= 1e9)
+            throw new IllegalArgumentException("Cannot encode " + value + " as a JSON number");
+
+        ensureCapacity(length + 21);
+
+        long scaled = Math.round(Math.abs(value) * 1e9);
+        if (value < 0 && scaled != 0)
+            data[length++] = '-';
+
+        appendDigits(scaled / 1000000000L, 1);
+        data[length++] = '.';
+
+        long fraction = scaled % 1000000000L;
+        if (fraction == 0)
+        {
+            data[length++] = '0';
+        }
+        else
+        {
+            int digits = 9;
+            while (fraction % 10 == 0)
+            {
+                fraction /= 10;
+                digits--;
+            }
+            appendDigits(fraction, digits);
+        }
+    }
+
+    // write n as at least minDigits decimal digits, capacity must be ensured
+    private void appendDigits(long n, int minDigits)
+    {
+        int digits = 1;
+        for (long rest = n / 10; rest > 0; rest /= 10)
+            digits++;
+        digits = Math.max(digits, minDigits);
+
+        for (int i = length + digits - 1; i >= length; i--)
+        {
+            data[i] = (byte)('0' + n % 10);
+            n /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Make room for at least capacity bytes, keeping the current content.
+     * @param capacity
+     */
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > data.length)
+        {
+            byte[] grown = new byte[Math.max(capacity, data.length * 2)];
+            System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+    }
+
+    public String toString()
+    {
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+}
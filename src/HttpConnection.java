@@ -0,0 +1,53 @@
+import java.io.IOException;
+
+/**
+ * One persistent HTTP/1.1 connection to a Lokarria web server. A connection
+ * is used by one thread at a time, HttpConnectionPool hands them out.
+ */
+public interface HttpConnection
+{
+    /**
+     * Perform a GET and read the whole response body.
+     * @param path path of the resource
+     * @param body buffer that receives the response body
+     * @return HTTP status code
+     * @throws IOException
+     */
+    public int get(String path, HttpBody body) throws IOException;
+
+    /**
+     * Perform a POST and drain the response body.
+     * @param path path of the resource
+     * @param data buffer holding the JSON body
+     * @param offset start of the body in data
+     * @param length number of bytes in the body
+     * @return HTTP status code
+     * @throws IOException
+     */
+    public int post(String path, byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Bound the time the following requests may take, until clearDeadline.
+     * A request that is not answered in time throws
+     * DeadlineExceededException and leaves the connection closed.
+     * @param deadline System.nanoTime() by which a response must have arrived
+     */
+    public void setDeadline(long deadline);
+
+    /**
+     * Let the following requests take as long as they need.
+     */
+    public void clearDeadline();
+
+    /**
+     * @return true as long as the connection can carry another request
+     */
+    public boolean isOpen();
+
+    /**
+     * @return number of requests completed on this connection
+     */
+    public int getUseCount();
+
+    public void close();
+}
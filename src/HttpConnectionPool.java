@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small pool of persistent HTTP/1.1 connections to one host:port. All
+ * Lokarria paths share the same connections, so once the pool is warm a
+ * request costs one round trip and no connection setup.
+ *
+ * A kept-alive connection may have been closed by the server while it was
+ * idle. A GET that fails on a reused connection is repeated once on a new
+ * one; a POST is not, since the robot may already have acted on it, so its
+ * error goes to the caller. The pool never blocks: if all connections are busy a new one is opened, and
+ * at most 'size' idle connections are kept when they are handed back.
+ *
+ * A call with a deadline passes the time left to the connection, as the
+ * timeout of opening it and of waiting for the response.
+ */
+public class HttpConnectionPool implements TimedTransport
+{
+    /**
+     * Opens new connections for the pool.
+     */
+    public interface Factory
+    {
+        /**
+         * @param connectTimeoutMillis how long the connection setup may take, 0 for no limit
+         */
+        public HttpConnection open(int connectTimeoutMillis) throws IOException;
+    }
+
+    private final Factory factory;
+    private final int size;
+    private final ArrayDeque<HttpConnection> idle;
+    private final List<HttpConnection> live;    // every open connection, idle or busy
+    private int opened;
+    private boolean closed;
+
+    /**
+     * Create a pool of socket connections.
+     * @param host normally http://127.0.0.1, the scheme is optional
+     * @param port normally 50000
+     * @param size number of idle connections to keep
+     * @return a new pool, no connection is opened until the first request
+     */
+    public static HttpConnectionPool create(String host, int port, int size)
+    {
+        final String hostName = hostName(host);
+        final int p = port;
+
+        return new HttpConnectionPool(new Factory()
+        {
+            public HttpConnection open(int connectTimeoutMillis) throws IOException
+            {
+                return new SocketHttpConnection(hostName, p, connectTimeoutMillis);
+            }
+        }, size);
+    }
+
+    /**
+     * Create a pool of connections over socket channels with direct buffers.
+     * @param host normally http://127.0.0.1, the scheme is optional
+     * @param port normally 50000
+     * @param size number of idle connections to keep
+     * @return a new pool, no connection is opened until the first request
+     */
+    public static HttpConnectionPool createNio(String host, int port, int size)
+    {
+        final String hostName = hostName(host);
+        final int p = port;
+
+        return new HttpConnectionPool(new Factory()
+        {
+            public HttpConnection open(int connectTimeoutMillis) throws IOException
+            {
+                return new NioHttpConnection(hostName, p, connectTimeoutMillis);
+            }
+        }, size);
+    }
+
+    /**
+     * @param factory opens new connections
+     * @param size number of idle connections to keep
+     */
+    public HttpConnectionPool(Factory factory, int size)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("Pool size must be at least 1");
+
+        this.factory = factory;
+        this.size = size;
+        idle = new ArrayDeque<HttpConnection>(size);
+        live = new ArrayList<HttpConnection>(size);
+    }
+
+    public int get(String path, HttpBody body) throws IOException
+    {
+        return get(path, body, false, 0);
+    }
+
+    public int get(String path, HttpBody body, long deadline) throws IOException
+    {
+        return get(path, body, true, deadline);
+    }
+
+    public int post(String path, byte[] data, int offset, int length) throws IOException
+    {
+        return post(path, data, offset, length, false, 0);
+    }
+
+    public int post(String path, byte[] data, int offset, int length, long deadline) throws IOException
+    {
+        return post(path, data, offset, length, true, deadline);
+    }
+
+    private int get(String path, HttpBody body, boolean timed, long deadline) throws IOException
+    {
+        HttpConnection c = acquire(timed, deadline);
+        try
+        {
+            int rc;
+            try
+            {
+                rc = c.get(path, body);
+            }
+            catch (IOException e)
+            {
+                // a reset or a close while idle; not worth it once the deadline passed
+                if (c.getUseCount() == 0 || e instanceof DeadlineExceededException)
+                    throw e;
+
+                discard(c);
+                c = open(timed, deadline);
+                rc = c.get(path, body);
+            }
+            release(c);
+            return rc;
+        }
+        catch (IOException e)
+        {
+            discard(c);
+            throw e;
+        }
+    }
+
+    private int post(String path, byte[] data, int offset, int length, boolean timed, long deadline)
+            throws IOException
+    {
+        HttpConnection c = acquire(timed, deadline);
+        try
+        {
+            int rc = c.post(path, data, offset, length);
+            release(c);
+            return rc;
+        }
+        catch (IOException e)
+        {
+            discard(c);
+            throw e;
+        }
+    }
+
+    /**
+     * Open connections up front so the first requests do not pay for the
+     * connection setup.
+     * @param n number of connections to open, at most the pool size
+     * @throws IOException
+     */
+    public void prestart(int n) throws IOException
+    {
+        n = Math.min(n, size);
+
+        List<HttpConnection> started = new ArrayList<HttpConnection>(n);
+        for (int i = 0; i < n; i++)
+            started.add(acquire(false, 0));
+
+        for (HttpConnection c : started)
+            release(c);
+    }
+
+    /**
+     * @return number of requests served by each open connection
+     */
+    public synchronized int[] getReuseCounts()
+    {
+        int[] counts = new int[live.size()];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = live.get(i).getUseCount();
+        return counts;
+    }
+
+    /**
+     * @return number of connections opened since the pool was created
+     */
+    public synchronized int getConnectionsOpened()
+    {
+        return opened;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public synchronized void close()
+    {
+        closed = true;
+        for (HttpConnection c : live)
+            c.close();
+        live.clear();
+        idle.clear();
+    }
+
+    private HttpConnection acquire(boolean timed, long deadline) throws IOException
+    {
+        synchronized (this)
+        {
+            if (closed)
+                throw new IOException("Connection pool is closed");
+
+            HttpConnection c;
+            while ((c = idle.pollFirst()) != null)
+            {
+                if (c.isOpen())
+                {
+                    if (timed)
+                        c.setDeadline(deadline);
+                    return c;
+                }
+                live.remove(c);
+            }
+        }
+        return open(timed, deadline);
+    }
+
+    private HttpConnection open(boolean timed, long deadline) throws IOException
+    {
+        HttpConnection c = factory.open(timed ? DeadlineExceededException.millisUntil(deadline) : 0);
+        if (timed)
+            c.setDeadline(deadline);
+
+        synchronized (this)
+        {
+            live.add(c);
+            opened++;
+        }
+        return c;
+    }
+
+    private synchronized void release(HttpConnection c)
+    {
+        c.clearDeadline();
+        if (c.isOpen() && !closed && idle.size() < size)
+        {
+            // most recently used first, it is the least likely to have timed out
+            idle.addFirst(c);
+        }
+        else
+        {
+            c.close();
+            live.remove(c);
+        }
+    }
+
+    private synchronized void discard(HttpConnection c)
+    {
+        c.close();
+        live.remove(c);
+    }
+
+    /**
+     * Strip the scheme from a host given as e.g. http://127.0.0.1
+     */
+    static String hostName(String host)
+    {
+        if (host.indexOf("://") < 0)
+            return host;
+
+        try
+        {
+            return new URL(host).getHost();
+        }
+        catch (MalformedURLException e)
+        {
+            throw new IllegalArgumentException("Bad host: " + host, e);
+        }
+    }
+}
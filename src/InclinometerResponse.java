@@ -1,22 +1,54 @@
+import java.io.IOException;
 import java.util.Map;
 
-public class InclinometerResponse implements Response
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+public class InclinometerResponse implements StreamingResponse
 {
-    private Map<String, Object> data;
+    // overwritten by every response
+    private double pitchAngle;
+    private double rollAngle;
+    private long timestamp;
 
     public void setData(Map<String, Object> data)
     {
-        this.data = data;
+        pitchAngle = LokarriaJson.toDouble(data.get("PitchAngle"));
+        rollAngle = LokarriaJson.toDouble(data.get("RollAngle"));
+        timestamp = LokarriaJson.toLong(data.get("TimeStamp"));
+    }
+
+    public void readFrom(JsonParser parser) throws IOException
+    {
+        LokarriaJson.startObject(parser);
+        pitchAngle = 0;
+        rollAngle = 0;
+        timestamp = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("PitchAngle".equals(name))
+                pitchAngle = LokarriaJson.readDouble(parser);
+            else if ("RollAngle".equals(name))
+                rollAngle = LokarriaJson.readDouble(parser);
+            else if ("TimeStamp".equals(name))
+                timestamp = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
     }
 
     public double getPitchAngle()
     {
-        return Double.parseDouble( (String)data.get("PitchAngle") );
+        return pitchAngle;
     }
 
     public double getRollAngle()
     {
-        return Double.parseDouble( (String)data.get("RollAngle") );
+        return rollAngle;
     }
 
     public String getPath()
@@ -26,7 +58,7 @@ public class InclinometerResponse implements Response
 
     public long getTimestamp()
     {
-        return (Long)data.get("TimeStamp");
+        return timestamp;
     }
 
 }
@@ -1,26 +1,73 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-public class LaserEchoesResponse implements Response
+
+public class LaserEchoesResponse implements StreamingResponse
 {
-    private Map<String, Object> data;
+    // reused between responses, grown when a scan has more echoes
+    private double[] echoes = new double[0];
+    private int echoCount;
+    private long timestamp;
 
     public void setData(Map<String, Object> data)
     {
-        this.data = data;
+        List<?> list = (List<?>)data.get("Echoes");
+
+        echoCount = 0;
+        for (Object echo : list)
+            addEcho(((Number)echo).doubleValue());
+
+        timestamp = LokarriaJson.toLong(data.get("TimeStamp"));
+    }
+
+    public void readFrom(JsonParser parser) throws IOException
+    {
+        LokarriaJson.startObject(parser);
+        echoCount = 0;
+        timestamp = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if ("Echoes".equals(name) && token == JsonToken.START_ARRAY)
+            {
+                while (parser.nextToken() != JsonToken.END_ARRAY)
+                    addEcho(parser.getDoubleValue());
+            }
+            else if ("TimeStamp".equals(name))
+            {
+                timestamp = parser.getLongValue();
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
     }
 
     public double[] getEchoes()
     {
-        ArrayList echoes = (ArrayList)data.get("Echoes");
+        return Arrays.copyOf(echoes, echoCount);
+    }
 
-        Object[] list = echoes.toArray();
-        double[] result = new double[list.length];
-        for (int i= 0 ; i < result.length; i++)
-            result[i] = (Double)list[i];    // unboxing
+    public int getEchoCount()
+    {
+        return echoCount;
+    }
+
+    public double getEcho(int i)
+    {
+        if (i >= echoCount)
+            throw new IndexOutOfBoundsException("Echo " + i + " of " + echoCount);
 
-        return result;
+        return echoes[i];
     }
 
     public String getPath()
@@ -30,7 +77,15 @@ public class LaserEchoesResponse implements Response
 
     public long getTimestamp()
     {
-        return (Long)data.get("TimeStamp");
+        return timestamp;
+    }
+
+    private void addEcho(double echo)
+    {
+        if (echoCount == echoes.length)
+            echoes = Arrays.copyOf(echoes, Math.max(16, echoCount * 2));
+
+        echoes[echoCount++] = echo;
     }
 
 }
@@ -1,37 +1,90 @@
+import java.io.IOException;
 import java.util.Map;
 
-public class LaserPropertiesResponse implements Response
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+public class LaserPropertiesResponse implements StreamingResponse
 {
-    private Map<String, Object> data;
+    // W, X, Y, Z and X, Y, Z of the laser on the robot, overwritten by every response
+    private final double[] orientation = new double[4];
+    private final double[] position = new double[3];
+    private double startAngle;
+    private double endAngle;
+    private double angleIncrement;
+    private long timestamp;
 
+    @SuppressWarnings("unchecked")
     public void setData(Map<String, Object> data)
     {
-        this.data = data;
+        LokarriaJson.readPose((Map<String, Object>)data.get("Pose"), orientation, position);
+        startAngle = LokarriaJson.toDouble(data.get("StartAngle"));
+        endAngle = LokarriaJson.toDouble(data.get("EndAngle"));
+        angleIncrement = LokarriaJson.toDouble(data.get("AngleIncrement"));
+        timestamp = LokarriaJson.toLong(data.get("TimeStamp"));
     }
 
-    public double[] getOrientation()
+    public void readFrom(JsonParser parser) throws IOException
     {
-        Map<String, Object> pose = (Map<String, Object>)data.get("Pose");
-        Map<String, Object> orientation = (Map<String, Object>)pose.get("Orientation");
+        LokarriaJson.startObject(parser);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("Pose".equals(name))
+                LokarriaJson.readPose(parser, orientation, position);
+            else if ("StartAngle".equals(name))
+                startAngle = LokarriaJson.readDouble(parser);
+            else if ("EndAngle".equals(name))
+                endAngle = LokarriaJson.readDouble(parser);
+            else if ("AngleIncrement".equals(name))
+                angleIncrement = LokarriaJson.readDouble(parser);
+            else if ("TimeStamp".equals(name))
+                timestamp = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
+    }
 
-        double w =  (Double)orientation.get("W");
-        double x =  (Double)orientation.get("X");
-        double y =  (Double)orientation.get("Y");
-        double z =  (Double)orientation.get("Z");
+    public double[] getOrientation()
+    {
+        return orientation.clone();
+    }
 
-        return new double[] {w, x, y, z};
+    // Copy the orientation (W, X, Y, Z) into out, without allocating
+    public double[] getOrientation(double[] out)
+    {
+        System.arraycopy(orientation, 0, out, 0, 4);
+        return out;
     }
 
     public double[] getPosition()
     {
-        Map<String, Object> pose = (Map<String, Object>)data.get("Pose");
-        Map<String, Object> position = (Map<String, Object>)pose.get("Position");
+        return position.clone();
+    }
 
-        double x =  (Double)position.get("X");
-        double y =  (Double)position.get("Y");
-        double z =  (Double)position.get("Z");
+    // Copy the position (X, Y, Z) into out, without allocating
+    public double[] getPosition(double[] out)
+    {
+        System.arraycopy(position, 0, out, 0, 3);
+        return out;
+    }
+
+    public double getStartAngle()
+    {
+        return startAngle;
+    }
 
-        return new double[] {x, y, z};
+    public double getEndAngle()
+    {
+        return endAngle;
+    }
+
+    public double getAngleIncrement()
+    {
+        return angleIncrement;
     }
 
     public String getPath()
@@ -41,7 +94,7 @@ public class LaserPropertiesResponse implements Response
 
     public long getTimestamp()
     {
-        return 0;
+        return timestamp;
     }
 
 }
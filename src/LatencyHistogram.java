@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, log-linear histogram of latencies in nanoseconds. Values
+ * below 64 ns are counted exactly, above that every power of two is split
+ * into 32 buckets. A percentile is reported as the highest value of its
+ * bucket, so it is never below the true value and less than 1/32 (about
+ * 3%) above it.
+ *
+ * Recording is lock free and does not allocate, so it can be done on every
+ * request. Readers see a consistent enough view for monitoring, but a
+ * percentile taken while values are being recorded may miss the newest ones.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;         // 64 exact buckets
+    private static final int HALF = SUB_COUNT / 2;              // 32 buckets per power of two
+    private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Count one latency.
+     * @param nanos latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+            ;
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * @return mean latency in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : (double)sum.get() / n;
+    }
+
+    /**
+     * @param fraction e.g. 0.99 for the 99th percentile
+     * @return the latency in nanoseconds below which the fraction of all
+     *         recorded latencies fall, rounded up to its bucket
+     */
+    public long getPercentile(double fraction)
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_COUNT)
+            return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF + (int)((value >>> shift) - HALF);
+    }
+
+    static long highestValue(int index)
+    {
+        if (index < SUB_COUNT)
+            return index;
+
+        int shift = (index - SUB_COUNT) / HALF + 1;
+        long sub = (index - SUB_COUNT) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A LocalizationResponse that decodes lazily. A new body is scanned once to
+ * find where the TimeStamp, Status and the seven numbers of the Pose start;
+ * each of them is converted the first time a getter needs it, straight from
+ * the bytes. A tick that only asks for the position never converts the
+ * orientation, and one that only looks at the TimeStamp converts nothing
+ * else.
+ *
+ * A body with the same TimeStamp as the one before describes the same
+ * moment, so it is not scanned: the fields already decoded stay valid and
+ * isUnchanged() tells the caller there is nothing new to act upon.
+ */
+public class LazyLocalizationResponse extends LocalizationResponse implements LazyResponse
+{
+    private static final byte[] POSE_KEY = key("Pose");
+    private static final byte[] ORIENTATION_KEY = key("Orientation");
+    private static final byte[] POSITION_KEY = key("Position");
+    private static final byte[] STATUS_KEY = key("Status");
+    private static final byte[] TIMESTAMP_KEY = key("TimeStamp");
+    private static final byte[][] ORIENTATION_KEYS = { key("W"), key("X"), key("Y"), key("Z") };
+    private static final byte[][] POSITION_KEYS = { key("X"), key("Y"), key("Z") };
+
+    // slots of the offset index
+    private static final int STATUS = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int W = 2;
+    private static final int PX = 6;
+    private static final int SLOTS = 9;
+
+    private byte[] raw = new byte[256];
+    private int rawLength;
+    private final int[] offsets = new int[SLOTS];
+    private int decoded;                    // bit per slot already converted
+
+    private final double[] orientation = new double[4];
+    private final double[] position = new double[3];
+    private int status;
+    private long timestamp;
+    private boolean unchanged;
+
+    public void setBody(byte[] data, int offset, int length) throws IOException
+    {
+        long previous = getTimestamp();
+
+        // cheap check first: the robot puts the TimeStamp last, look for it there
+        long found = findTimestamp(data, offset, offset + length);
+        if (found > 0 && found == previous)
+        {
+            unchanged = true;
+            return;
+        }
+
+        if (raw.length < length)
+            raw = new byte[Math.max(length, raw.length * 2)];
+        System.arraycopy(data, offset, raw, 0, length);
+        rawLength = length;
+        decoded = 0;
+
+        index();
+
+        if (found > 0)
+        {
+            timestamp = found;
+            decoded |= bit(TIMESTAMP);
+        }
+        unchanged = previous > 0 && getTimestamp() == previous;
+    }
+
+    public boolean isUnchanged()
+    {
+        return unchanged;
+    }
+
+    public void setData(Map<String, Object> data)
+    {
+        super.setData(data);
+        copyFromParent();
+    }
+
+    public void readFrom(JsonParser parser) throws IOException
+    {
+        super.readFrom(parser);
+        copyFromParent();
+    }
+
+    public double[] getOrientation()
+    {
+        return getOrientation(new double[4]);
+    }
+
+    public double[] getOrientation(double[] out)
+    {
+        for (int k = 0; k < 4; k++)
+            out[k] = decode(W + k, orientation, k);
+        return out;
+    }
+
+    public double getHeadingAngle()
+    {
+        return QuaternionMath.yaw(decode(W, orientation, 0), decode(W + 1, orientation, 1),
+                decode(W + 2, orientation, 2), decode(W + 3, orientation, 3));
+    }
+
+    public double[] getPosition()
+    {
+        return getPosition(new double[3]);
+    }
+
+    public double[] getPosition(double[] out)
+    {
+        for (int k = 0; k < 3; k++)
+            out[k] = decode(PX + k, position, k);
+        return out;
+    }
+
+    public double getX()
+    {
+        return decode(PX, position, 0);
+    }
+
+    public double getY()
+    {
+        return decode(PX + 1, position, 1);
+    }
+
+    public int getStatus()
+    {
+        if ((decoded & bit(STATUS)) == 0)
+        {
+            status = (int)decodeLong(STATUS);
+            decoded |= bit(STATUS);
+        }
+        return status;
+    }
+
+    public long getTimestamp()
+    {
+        if ((decoded & bit(TIMESTAMP)) == 0)
+        {
+            timestamp = decodeLong(TIMESTAMP);
+            decoded |= bit(TIMESTAMP);
+        }
+        return timestamp;
+    }
+
+    // find the offsets of all fields in one pass over the body
+    private void index() throws IOException
+    {
+        int end = rawLength;
+        for (int k = 0; k < SLOTS; k++)
+            offsets[k] = -1;
+
+        int i = RawJson.skipWhitespace(raw, 0, end);
+        if (i >= end || raw[i] != '{')
+            throw new IOException("Expected a JSON object");
+
+        i = RawJson.skipWhitespace(raw, i + 1, end);
+        while (i < end && raw[i] != '}')
+        {
+            int key = i;
+            i = RawJson.memberValue(raw, i, end);
+
+            if (RawJson.keyEquals(raw, key, end, POSE_KEY) && raw[i] == '{')
+            {
+                i = indexPose(i, end);
+            }
+            else
+            {
+                if (RawJson.keyEquals(raw, key, end, STATUS_KEY))
+                    offsets[STATUS] = i;
+                else if (RawJson.keyEquals(raw, key, end, TIMESTAMP_KEY))
+                    offsets[TIMESTAMP] = i;
+                i = RawJson.skipValue(raw, i, end);
+            }
+            i = RawJson.nextMember(raw, i, end);
+        }
+    }
+
+    private int indexPose(int i, int end) throws IOException
+    {
+        i = RawJson.skipWhitespace(raw, i + 1, end);
+        while (i < end && raw[i] != '}')
+        {
+            int key = i;
+            i = RawJson.memberValue(raw, i, end);
+
+            if (RawJson.keyEquals(raw, key, end, ORIENTATION_KEY))
+                i = RawJson.indexObject(raw, i, end, ORIENTATION_KEYS, offsets, W);
+            else if (RawJson.keyEquals(raw, key, end, POSITION_KEY))
+                i = RawJson.indexObject(raw, i, end, POSITION_KEYS, offsets, PX);
+            else
+                i = RawJson.skipValue(raw, i, end);
+            i = RawJson.nextMember(raw, i, end);
+        }
+        return i + 1;
+    }
+
+    private double decode(int slot, double[] cache, int k)
+    {
+        if ((decoded & bit(slot)) == 0)
+        {
+            cache[k] = offsets[slot] < 0 ? 0 : parse(slot);
+            decoded |= bit(slot);
+        }
+        return cache[k];
+    }
+
+    private double parse(int slot)
+    {
+        try
+        {
+            return RawJson.parseDouble(raw, offsets[slot], rawLength);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Malformed number in localization body", e);
+        }
+    }
+
+    private long decodeLong(int slot)
+    {
+        if (rawLength == 0 || offsets[slot] < 0)
+            return 0;
+        try
+        {
+            return RawJson.parseLong(raw, offsets[slot], rawLength);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Malformed number in localization body", e);
+        }
+    }
+
+    private void copyFromParent()
+    {
+        super.getOrientation(orientation);
+        super.getPosition(position);
+        status = super.getStatus();
+        timestamp = super.getTimestamp();
+        rawLength = 0;
+        unchanged = false;
+        decoded = (1 << SLOTS) - 1;
+    }
+
+    /**
+     * Look for "TimeStamp": near the end of the body, where the robot puts
+     * it, and convert it without indexing the body.
+     * @return the time stamp, 0 if it is not the last field
+     */
+    private static long findTimestamp(byte[] b, int from, int end) throws IOException
+    {
+        byte[] key = TIMESTAMP_KEY;
+
+        // the value is at most 20 digits, then maybe white space and the brace
+        for (int i = end - key.length - 3; i >= Math.max(from, end - key.length - 32); i--)
+        {
+            if (b[i] == '"' && RawJson.keyEquals(b, i, end, key))
+            {
+                int value = RawJson.memberValue(b, i, end);
+                return RawJson.parseLong(b, value, end);
+            }
+        }
+        return 0;
+    }
+
+    private static int bit(int slot)
+    {
+        return 1 << slot;
+    }
+
+    private static byte[] key(String name)
+    {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+}
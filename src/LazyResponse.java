@@ -0,0 +1,23 @@
+/**
+ * A response that keeps its raw body and decodes fields only when they are
+ * asked for. RobotCommunication hands such a response the body bytes
+ * instead of parsing them, so a read costs one scan to find the fields, and
+ * a field nobody asks for is never converted.
+ */
+public interface LazyResponse extends Response
+{
+    /**
+     * Take a new body. The bytes are copied, the array may be reused after.
+     * @param data buffer holding the body
+     * @param offset start of the body
+     * @param length number of bytes in the body
+     * @throws java.io.IOException if the body is not what the resource should return
+     */
+    public void setBody(byte[] data, int offset, int length) throws java.io.IOException;
+
+    /**
+     * @return true if the last body had the same TimeStamp as the one
+     *         before, so it was not indexed or decoded again
+     */
+    public boolean isUnchanged();
+}
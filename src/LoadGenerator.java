@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives a number of concurrent clients against a Lokarria server and
+ * reports throughput and latency percentiles. Each client has its own
+ * RobotCommunication and runs a control loop as fast as it can: read the
+ * localization, send a drive command.
+ *
+ * Without a host the load goes to a LokarriaStandInServer started in this
+ * process, with a little latency, jitter, stalls and errors injected.
+ */
+public class LoadGenerator
+{
+    private final String host;
+    private final int port;
+    private final String transportType;
+    private final CommunicationMetrics metrics = new CommunicationMetrics();
+    private volatile boolean running;
+
+    /**
+     * @param host e.g. http://127.0.0.1
+     * @param port e.g. 50000
+     * @param transportType url, socket or nio
+     */
+    public LoadGenerator(String host, int port, String transportType)
+    {
+        this.host = host;
+        this.port = port;
+        this.transportType = transportType;
+    }
+
+    /**
+     * @param args clients, seconds, transport (url, socket or nio),
+     *             and optionally host and port of a running server
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String transportType = args.length > 2 ? args[2] : "socket";
+
+        LokarriaStandInServer server = null;
+        String host;
+        int port;
+
+        if (args.length > 4)
+        {
+            host = args[3];
+            port = Integer.parseInt(args[4]);
+        }
+        else
+        {
+            server = new LokarriaStandInServer(0);
+            server.setDefaultFaults(new FaultProfile(0.5, 1.0, 0.01, 20, 0.001));
+            server.start();
+
+            host = "http://127.0.0.1";
+            port = server.getPort();
+            System.out.println("Stand-in server: " + new FaultProfile(0.5, 1.0, 0.01, 20, 0.001));
+        }
+
+        System.out.println(clients + " clients, " + seconds + " s, " + transportType + " transport");
+
+        LoadGenerator generator = new LoadGenerator(host, port, transportType);
+        generator.run(clients, seconds * 1000L);
+
+        System.out.println(generator.getMetrics().report());
+
+        if (server != null)
+            server.stop();
+    }
+
+    /**
+     * Run the clients and wait for them to finish.
+     * @param clients number of concurrent clients
+     * @param millis how long to run
+     * @throws InterruptedException
+     */
+    public void run(int clients, long millis) throws InterruptedException
+    {
+        metrics.reset();
+        running = true;
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < clients; i++)
+        {
+            final RobotCommunication robotcomm = new RobotCommunication(newTransport(), metrics);
+
+            Thread t = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    controlLoop(robotcomm);
+                }
+            }, "load-client-" + i);
+            threads.add(t);
+            t.start();
+        }
+
+        Thread.sleep(millis);
+        running = false;
+
+        for (Thread t : threads)
+            t.join();
+    }
+
+    public CommunicationMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private Transport newTransport()
+    {
+        if (transportType.equals("url"))
+            return new UrlConnectionTransport(host, port);
+        if (transportType.equals("nio"))
+            return HttpConnectionPool.createNio(host, port, 1);
+        return HttpConnectionPool.create(host, port, 1);
+    }
+
+    private void controlLoop(RobotCommunication robotcomm)
+    {
+        LocalizationResponse lr = new LocalizationResponse();
+        DifferentialDriveRequest dr = new DifferentialDriveRequest();
+
+        while (running)
+        {
+            try
+            {
+                robotcomm.getResponse(lr);
+
+                // something that changes, so it is a real command
+                dr.setLinearSpeed(0.5);
+                dr.setAngularSpeed(Math.sin(lr.getHeadingAngle()) * 0.5);
+                robotcomm.putRequest(dr);
+            }
+            catch (Exception e)
+            {
+                // counted in the metrics, keep going
+            }
+        }
+        robotcomm.close();
+    }
+}
@@ -1,57 +1,94 @@
-import java.util.Collection;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
 
-public class LocalizationResponse implements Response
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+public class LocalizationResponse implements StreamingResponse
 {
-    private Map<String, Object> data;
+    // W, X, Y, Z and X, Y, Z, overwritten by every response
+    private final double[] orientation = new double[4];
+    private final double[] position = new double[3];
+    private int status;
+    private long timestamp;
 
+    @SuppressWarnings("unchecked")
     public void setData(Map<String, Object> data)
     {
-        this.data = data;
+        LokarriaJson.readPose((Map<String, Object>)data.get("Pose"), orientation, position);
+        status = ((Number)data.get("Status")).intValue();
+        timestamp = LokarriaJson.toLong(data.get("TimeStamp"));
     }
 
-    public double[] getOrientation()
+    public void readFrom(JsonParser parser) throws IOException
     {
-        Map<String, Object> pose = (Map<String, Object>)data.get("Pose");
-        Map<String, Object> orientation = (Map<String, Object>)pose.get("Orientation");
+        LokarriaJson.startObject(parser);
+        Arrays.fill(orientation, 0);
+        Arrays.fill(position, 0);
+        status = 0;
+        timestamp = 0;
 
-        double w =  (Double)orientation.get("W");
-        double x =  (Double)orientation.get("X");
-        double y =  (Double)orientation.get("Y");
-        double z =  (Double)orientation.get("Z");
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
 
-        return new double[] {w, x, y, z};
+            if ("Pose".equals(name))
+                LokarriaJson.readPose(parser, orientation, position);
+            else if ("Status".equals(name))
+                status = parser.getIntValue();
+            else if ("TimeStamp".equals(name))
+                timestamp = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
+    }
+
+    public double[] getOrientation()
+    {
+        return orientation.clone();
+    }
+
+    // Copy the orientation (W, X, Y, Z) into out, without allocating
+    public double[] getOrientation(double[] out)
+    {
+        System.arraycopy(orientation, 0, out, 0, 4);
+        return out;
     }
 
     // Return an array with position coordinates
     public double[] getPosition()
     {
-        Map<String, Object> pose = (Map<String, Object>)data.get("Pose");
-        Map<String, Object> position = (Map<String, Object>)pose.get("Position");
+        return position.clone();
+    }
 
-        double x =  (Double)position.get("X");
-        double y =  (Double)position.get("Y");
-        double z =  (Double)position.get("Z");
+    // Copy the position (X, Y, Z) into out, without allocating
+    public double[] getPosition(double[] out)
+    {
+        System.arraycopy(position, 0, out, 0, 3);
+        return out;
+    }
 
-        return new double[] {x, y, z};
+    public double getX()
+    {
+        return position[0];
+    }
+
+    public double getY()
+    {
+        return position[1];
     }
 
     // return the robot heading, i.e. in which direction it 'points'
     public double getHeadingAngle()
     {
-        double e[] = getOrientation();
-
-        Quaternion q = new Quaternion(e);
-        double[] v = q.heading();
-
-        return Math.atan2(v[1], v[0]);
+        return QuaternionMath.yaw(orientation[0], orientation[1], orientation[2], orientation[3]);
     }
 
     public int getStatus()
     {
-        return (Integer)data.get("Status");
+        return status;
     }
     public String getPath()
     {
@@ -60,7 +97,7 @@ public class LocalizationResponse implements Response
 
     public long getTimestamp()
     {
-        return (Long)data.get("TimeStamp");
+        return timestamp;
     }
 
 }
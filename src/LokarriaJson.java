@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Helpers for reading the JSON structures shared by several Lokarria
+ * resources, both from a token stream and from an already parsed Map.
+ */
+final class LokarriaJson
+{
+    static final String ORIENTATION_KEYS = "WXYZ";
+    static final String POSITION_KEYS = "XYZ";
+
+    private LokarriaJson()
+    {
+    }
+
+    /**
+     * Move to the start of an object.
+     * @param parser positioned before the START_OBJECT token
+     */
+    static void startObject(JsonParser parser) throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new IOException("Expected a JSON object");
+    }
+
+    /**
+     * Read a Pose object: {"Orientation":{W,X,Y,Z},"Position":{X,Y,Z}}.
+     * @param parser positioned on the START_OBJECT token of the pose
+     * @param orientation receives W, X, Y, Z
+     * @param position receives X, Y, Z
+     */
+    static void readPose(JsonParser parser, double[] orientation, double[] position)
+            throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("Orientation".equals(name))
+                readComponents(parser, ORIENTATION_KEYS, orientation);
+            else if ("Position".equals(name))
+                readComponents(parser, POSITION_KEYS, position);
+            else
+                parser.skipChildren();
+        }
+    }
+
+    /**
+     * Read an object of single letter number fields, e.g. {"X":1,"Y":2,"Z":3}.
+     * @param parser positioned on the START_OBJECT token
+     * @param keys the letters in the order they are stored
+     * @param out receives the values
+     */
+    static void readComponents(JsonParser parser, String keys, double[] out)
+            throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+
+            int i = name.length() == 1 ? keys.indexOf(name.charAt(0)) : -1;
+            if (i >= 0)
+                out[i] = parser.getDoubleValue();
+            else
+                parser.skipChildren();
+        }
+    }
+
+    /**
+     * Read a number that the robot may also send as a string, e.g. "0.5".
+     * @param parser positioned on the value
+     * @return the number, 0 for null
+     */
+    static double readDouble(JsonParser parser) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_STRING)
+            return Double.parseDouble(parser.getText().trim());
+        if (token == JsonToken.VALUE_NULL)
+            return 0;
+        return parser.getDoubleValue();
+    }
+
+    /**
+     * Same as readPose, for a body already parsed into a Map.
+     */
+    @SuppressWarnings("unchecked")
+    static void readPose(Map<String, Object> pose, double[] orientation, double[] position)
+    {
+        readComponents((Map<String, Object>)pose.get("Orientation"), ORIENTATION_KEYS, orientation);
+        readComponents((Map<String, Object>)pose.get("Position"), POSITION_KEYS, position);
+    }
+
+    static void readComponents(Map<String, Object> map, String keys, double[] out)
+    {
+        for (int i = 0; i < keys.length(); i++)
+            out[i] = ((Number)map.get(keys.substring(i, i + 1))).doubleValue();
+    }
+
+    static double toDouble(Object value)
+    {
+        if (value instanceof String)
+            return Double.parseDouble(((String)value).trim());
+        return value == null ? 0 : ((Number)value).doubleValue();
+    }
+
+    static long toLong(Object value)
+    {
+        return value == null ? 0 : ((Number)value).longValue();
+    }
+}
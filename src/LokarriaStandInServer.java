@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small local HTTP server that serves the Lokarria paths from a
+ * SimulatedRobot running in real time, so RobotCommunication and the
+ * controllers can be tried without DssHost32. Latency, jitter, stalls and
+ * errors can be injected per path, see FaultProfile.
+ *
+ * It uses the HTTP server that ships with the JDK.
+ */
+public class LokarriaStandInServer
+{
+    static
+    {
+        // without this the JDK server waits for delayed ACKs on small bodies
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final SimulatedRobot robot;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, FaultProfile> faults =
+            new ConcurrentHashMap<String, FaultProfile>();
+    private volatile FaultProfile defaultFaults = FaultProfile.NONE;
+    private long lastStepNanos;
+
+    /**
+     * Serve a robot that starts at the origin.
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException
+     */
+    public LokarriaStandInServer(int port) throws IOException
+    {
+        this(new SimulatedRobot(), port);
+    }
+
+    /**
+     * @param robot the robot to serve
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException
+     */
+    public LokarriaStandInServer(SimulatedRobot robot, int port) throws IOException
+    {
+        this.robot = robot;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+        server.createContext("/lokarria/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange);
+            }
+        });
+
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Serve a simulated robot on port 50000 (or the port given) until killed.
+     * @param args optionally the port
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+
+        LokarriaStandInServer server = new LokarriaStandInServer(port);
+        server.start();
+        System.out.println("Serving a simulated robot on http://127.0.0.1:" + server.getPort());
+    }
+
+    public void start()
+    {
+        lastStepNanos = System.nanoTime();
+        server.start();
+    }
+
+    public void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    public SimulatedRobot getRobot()
+    {
+        return robot;
+    }
+
+    /**
+     * Inject faults on one path.
+     * @param path e.g. /lokarria/localization
+     * @param profile faults to inject, FaultProfile.NONE for none
+     */
+    public void setFaults(String path, FaultProfile profile)
+    {
+        faults.put(path, profile);
+    }
+
+    /**
+     * Inject faults on every path without a profile of its own.
+     * @param profile
+     */
+    public void setDefaultFaults(FaultProfile profile)
+    {
+        defaultFaults = profile;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            String path = exchange.getRequestURI().getPath();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            FaultProfile profile = faults.get(path);
+            if (profile == null)
+                profile = defaultFaults;
+
+            HttpBody request = new HttpBody(256);
+            InputStream in = exchange.getRequestBody();
+            request.readToEnd(in);
+            in.close();
+
+            double delay = profile.nextDelayMillis(random);
+            if (delay > 0)
+                LockSupport.parkNanos((long)(delay * 1000000));
+
+            if (profile.nextIsError(random))
+            {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            int status;
+            HttpBody body = new HttpBody(256);
+            synchronized (robot)
+            {
+                stepToNow();
+                if ("POST".equals(exchange.getRequestMethod()))
+                    status = robot.post(path, request.array(), 0, request.length());
+                else
+                    status = robot.get(path, body);
+            }
+
+            if (status == SimulatedRobot.OK)
+            {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length());
+                OutputStream out = exchange.getResponseBody();
+                out.write(body.array(), 0, body.length());
+                out.close();
+            }
+            else
+            {
+                exchange.sendResponseHeaders(status, -1);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    // run the simulation up to the current wall clock time, called with the robot locked
+    private void stepToNow()
+    {
+        long now = System.nanoTime();
+        robot.step((now - lastStepNanos) / 1e9);
+        lastStepNanos = now;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * The metrics of one Lokarria path at one moment, with latencies in
+ * microseconds. Snapshots are immutable and can be kept or exported while
+ * the live metrics keep counting.
+ */
+public class MetricsSnapshot
+{
+    private final String path;
+    private final double seconds;
+    private final long requests;
+    private final long errors;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long expired;
+    private final long stale;
+    private final long hedges;
+    private final long hedgeWins;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    /**
+     * @param m live metrics to copy
+     * @param seconds time the metrics have been counting
+     */
+    public MetricsSnapshot(EndpointMetrics m, double seconds)
+    {
+        LatencyHistogram h = m.getLatency();
+
+        path = m.getPath();
+        this.seconds = seconds;
+        requests = m.getRequests();
+        errors = m.getErrors();
+        bytesSent = m.getBytesSent();
+        bytesReceived = m.getBytesReceived();
+        expired = m.getExpired();
+        stale = m.getStale();
+        hedges = m.getHedges();
+        hedgeWins = m.getHedgeWins();
+        meanMicros = h.getMean() / 1000;
+        p50Micros = h.getPercentile(0.5) / 1000.0;
+        p99Micros = h.getPercentile(0.99) / 1000.0;
+        p999Micros = h.getPercentile(0.999) / 1000.0;
+        maxMicros = h.getMax() / 1000.0;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public long getRequests()
+    {
+        return requests;
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived;
+    }
+
+    /**
+     * @return requests dropped unsent because their deadline had passed
+     */
+    public long getExpired()
+    {
+        return expired;
+    }
+
+    /**
+     * @return responses older than the freshness bound
+     */
+    public long getStale()
+    {
+        return stale;
+    }
+
+    /**
+     * @return second reads started because the first was slow
+     */
+    public long getHedges()
+    {
+        return hedges;
+    }
+
+    /**
+     * @return second reads that answered first
+     */
+    public long getHedgeWins()
+    {
+        return hedgeWins;
+    }
+
+    /**
+     * @return hedges per request
+     */
+    public double getHedgeRate()
+    {
+        return requests > 0 ? (double)hedges / requests : 0;
+    }
+
+    /**
+     * @return requests per second over the time the metrics were counting
+     */
+    public double getThroughput()
+    {
+        return seconds > 0 ? requests / seconds : 0;
+    }
+
+    public double getMeanMicros()
+    {
+        return meanMicros;
+    }
+
+    public double getP50Micros()
+    {
+        return p50Micros;
+    }
+
+    public double getP99Micros()
+    {
+        return p99Micros;
+    }
+
+    public double getP999Micros()
+    {
+        return p999Micros;
+    }
+
+    public double getMaxMicros()
+    {
+        return maxMicros;
+    }
+
+    /**
+     * @return header line matching toString
+     */
+    public static String header()
+    {
+        return String.format("%-30s %9s %7s %7s %7s %7s %7s %9s %9s %9s %9s %9s %11s %11s",
+                "path", "requests", "errors", "expired", "stale", "hedges", "won",
+                "req/s", "p50 us", "p99 us", "p999 us", "max us", "bytes out", "bytes in");
+    }
+
+    public String toString()
+    {
+        return String.format("%-30s %9d %7d %7d %7d %7d %7d %9.1f %9.0f %9.0f %9.0f %9.0f %11d %11d",
+                path, requests, errors, expired, stale, hedges, hedgeWins, getThroughput(),
+                p50Micros, p99Micros, p999Micros, maxMicros, bytesSent, bytesReceived);
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A persistent HTTP/1.1 connection over a SocketChannel. Requests are built
+ * and responses read through two direct ByteBuffers that live as long as the
+ * connection, so a request creates next to no garbage and the bytes are
+ * handed to the operating system without an extra copy.
+ *
+ * The channel is non-blocking: when it can not go on it waits in a selector
+ * of its own, with the time left until the deadline as the select timeout.
+ */
+public class NioHttpConnection extends AbstractHttpConnection
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private ByteBuffer out;
+    private final ByteBuffer in;
+
+    /**
+     * Connect to a Lokarria web server.
+     * @param host host name or address, without scheme
+     * @param port normally 50000
+     * @throws IOException
+     */
+    public NioHttpConnection(String host, int port) throws IOException
+    {
+        this(host, port, 0);
+    }
+
+    /**
+     * Connect to a Lokarria web server.
+     * @param host host name or address, without scheme
+     * @param port normally 50000
+     * @param connectTimeoutMillis how long the connection setup may take, 0 for no limit
+     * @throws DeadlineExceededException if the connection setup takes longer
+     * @throws IOException
+     */
+    public NioHttpConnection(String host, int port, int connectTimeoutMillis) throws IOException
+    {
+        super(host, port);
+
+        channel = SocketChannel.open();
+        selector = Selector.open();
+        try
+        {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            channel.configureBlocking(false);
+            key = channel.register(selector, 0);
+
+            if (connectTimeoutMillis > 0)
+                setDeadline(System.nanoTime() + connectTimeoutMillis * 1000000L);
+            if (!channel.connect(new InetSocketAddress(host, port)))
+            {
+                while (!channel.finishConnect())
+                    await(SelectionKey.OP_CONNECT);
+            }
+            clearDeadline();
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+
+        out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        in.flip();  // start out empty
+    }
+
+    protected void write(byte[] b, int offset, int length) throws IOException
+    {
+        if (out.remaining() < length)
+        {
+            // only for bodies larger than anything Lokarria takes
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2,
+                    out.position() + length));
+            out.flip();
+            grown.put(out);
+            out = grown;
+        }
+        out.put(b, offset, length);
+    }
+
+    protected void flush() throws IOException
+    {
+        out.flip();
+        while (out.hasRemaining())
+        {
+            if (channel.write(out) == 0)
+                await(SelectionKey.OP_WRITE);
+        }
+        out.clear();
+    }
+
+    protected int read() throws IOException
+    {
+        if (!in.hasRemaining() && fill() < 0)
+            return -1;
+
+        return in.get() & 0xff;
+    }
+
+    protected int read(byte[] b, int offset, int length) throws IOException
+    {
+        if (!in.hasRemaining() && fill() < 0)
+            return -1;
+
+        int n = Math.min(length, in.remaining());
+        in.get(b, offset, n);
+        return n;
+    }
+
+    protected void closeSocket() throws IOException
+    {
+        try
+        {
+            channel.close();
+        }
+        finally
+        {
+            selector.close();
+        }
+    }
+
+    private int fill() throws IOException
+    {
+        in.clear();
+        int n;
+        while ((n = channel.read(in)) == 0)
+            await(SelectionKey.OP_READ);
+        in.flip();
+        return n;
+    }
+
+    // wait until the channel may be ready for an operation, or the time is
+    // up: the next call then finds the deadline passed
+    private void await(int operation) throws IOException
+    {
+        key.interestOps(operation);
+        selector.select(remainingMillis());
+        selector.selectedKeys().clear();
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of reusable objects, e.g. responses that are read into
+ * over and over again. borrow() hands out an idle object or creates a new
+ * one; release() gives it back for the next borrower. Objects released when
+ * the pool is full are left to the garbage collector.
+ *
+ * The pool does not reset objects. A Lokarria response clears its fields
+ * before it reads a body, so a field missing from the body reads as 0
+ * rather than as the value of the previous response. Requests only hold
+ * what their setters set.
+ */
+public class ObjectPool<T>
+{
+    public interface Factory<T>
+    {
+        public T create();
+    }
+
+    private final Factory<T> factory;
+    private final int capacity;
+    private final ArrayDeque<T> idle;
+    private long created;
+
+    /**
+     * @param factory creates an object when none is idle
+     * @param capacity most idle objects to keep
+     */
+    public ObjectPool(Factory<T> factory, int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Pool capacity must be at least 1");
+
+        this.factory = factory;
+        this.capacity = capacity;
+        this.idle = new ArrayDeque<T>(capacity);
+    }
+
+    /**
+     * @return an idle object, or a new one if there is none
+     */
+    public T borrow()
+    {
+        synchronized (this)
+        {
+            T object = idle.pollFirst();
+            if (object != null)
+                return object;
+            created++;
+        }
+        return factory.create();
+    }
+
+    /**
+     * Give an object back. It must not be used by the caller afterwards.
+     * @param object borrowed from this pool
+     */
+    public synchronized void release(T object)
+    {
+        if (object != null && idle.size() < capacity)
+            idle.addFirst(object);
+    }
+
+    /**
+     * @return number of objects created because none was idle
+     */
+    public synchronized long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * @return number of objects waiting to be borrowed
+     */
+    public synchronized int getIdle()
+    {
+        return idle.size();
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+
+/**
+ * Follows a path the way RummelTheRobustRobot does: head for the first path
+ * point that is at least the look-ahead distance away, full speed when the
+ * turn is small, half speed otherwise, slowing down on the way to the last
+ * point and stopping near it.
+ */
+public class PathFollower implements RobotController
+{
+    private final double[] xs;
+    private final double[] ys;
+    private final double lookAheadDistance;
+    private int next;
+
+    /**
+     * @param xs x of the path points
+     * @param ys y of the path points
+     * @param lookAheadDistance in meters, Rummel uses 1
+     */
+    public PathFollower(double[] xs, double[] ys, double lookAheadDistance)
+    {
+        if (xs.length == 0 || xs.length != ys.length)
+            throw new IllegalArgumentException("Empty or uneven path");
+
+        this.xs = xs;
+        this.ys = ys;
+        this.lookAheadDistance = lookAheadDistance;
+    }
+
+    /**
+     * Read the positions of a path file and thin them out with the default
+     * PathPreprocessor.
+     * @param filename path file, a JSON array of {"Pose":...} objects
+     * @param lookAheadDistance in meters
+     * @return a follower for the path
+     * @throws IOException if the file can not be read
+     */
+    public static PathFollower load(String filename, double lookAheadDistance) throws IOException
+    {
+        return load(filename, lookAheadDistance, new PathPreprocessor());
+    }
+
+    /**
+     * Read the positions of a path file.
+     * @param filename path file, a JSON array of {"Pose":...} objects
+     * @param lookAheadDistance in meters
+     * @param preprocessor thins out the path, null to follow every recorded point
+     * @return a follower for the path
+     * @throws IOException if the file can not be read
+     */
+    public static PathFollower load(String filename, double lookAheadDistance,
+                                    PathPreprocessor preprocessor) throws IOException
+    {
+        PoseArray poses = PoseArray.load(filename);
+        if (preprocessor != null)
+            poses = preprocessor.process(poses);
+        return new PathFollower(poses.copyX(), poses.copyY(), lookAheadDistance);
+    }
+
+    public boolean update(double[] pose, LocalizationResponse lr, DifferentialDriveRequest drive)
+    {
+        double x = pose[0];
+        double y = pose[1];
+        int last = xs.length - 1;
+
+        if (Math.hypot(xs[last] - x, ys[last] - y) <= 0.1)
+        {
+            drive.setLinearSpeed(0);
+            drive.setAngularSpeed(0);
+            return false;
+        }
+
+        while (next < last && Math.hypot(xs[next] - x, ys[next] - y) < lookAheadDistance)
+            next++;
+
+        double turn = Math.atan2(ys[next] - y, xs[next] - x) - pose[2];
+        if (turn > Math.PI)
+            turn -= 2 * Math.PI;
+        else if (turn < -Math.PI)
+            turn += 2 * Math.PI;
+
+        // slow down on the way to the last point, or the robot may circle it
+        double linear = Math.abs(turn) < 0.1 ? 1 : 0.5;
+        if (next == last)
+            linear = Math.min(linear, Math.hypot(xs[last] - x, ys[last] - y));
+
+        drive.setAngularSpeed(turn);
+        drive.setLinearSpeed(linear);
+        return true;
+    }
+
+    /**
+     * @return index of the path point the robot is heading for
+     */
+    public int getNext()
+    {
+        return next;
+    }
+
+    /**
+     * Continue from a given path point, e.g. after the robot got there
+     * some other way.
+     * @param index path point to head for
+     */
+    public void setNext(int index)
+    {
+        next = Math.max(0, Math.min(index, xs.length - 1));
+    }
+
+    public double getX(int index)
+    {
+        return xs[index];
+    }
+
+    public double getY(int index)
+    {
+        return ys[index];
+    }
+
+    /**
+     * @return number of path points
+     */
+    public int size()
+    {
+        return xs.length;
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Thins out a recorded path before it is followed. The paths are recorded
+ * while the robot is driven by hand, so they hold long runs of points where
+ * the robot stood still and many more points than their shape needs. Three
+ * steps, each of which can be switched off with a distance of 0:
+ *
+ * 1. Standstill removal: a point closer than a minimum distance to the
+ *    last point kept is dropped.
+ * 2. Ramer-Douglas-Peucker simplification: only the points needed to stay
+ *    within a tolerance of the path are kept.
+ * 3. Resampling: points are put at equal distances along what is left, so
+ *    a look-ahead distance always spans about the same number of points.
+ *
+ * The first and the last point are always kept. report() tells how many
+ * points were left after each step.
+ */
+public class PathPreprocessor
+{
+    private final double minDistance;
+    private final double tolerance;
+    private final double spacing;
+
+    private int loaded;
+    private int moving;
+    private int simplified;
+    private int resampled;
+
+    /**
+     * @param minDistance points closer than this to the one before are dropped, in meters
+     * @param tolerance how far the simplified path may be from the points, in meters
+     * @param spacing distance between the points after resampling, in meters
+     */
+    public PathPreprocessor(double minDistance, double tolerance, double spacing)
+    {
+        this.minDistance = minDistance;
+        this.tolerance = tolerance;
+        this.spacing = spacing;
+    }
+
+    /**
+     * Standstill below 1 cm, simplification to 2 cm and a point every 10 cm.
+     */
+    public PathPreprocessor()
+    {
+        this(0.01, 0.02, 0.1);
+    }
+
+    /**
+     * Run all the steps.
+     * @param poses the path as loaded
+     * @return a new, thinned out path
+     */
+    public PoseArray process(PoseArray poses)
+    {
+        loaded = poses.size();
+
+        PoseArray path = removeStandstill(poses);
+        moving = path.size();
+
+        path = simplify(path);
+        simplified = path.size();
+
+        path = resample(path);
+        resampled = path.size();
+
+        return path;
+    }
+
+    /**
+     * @param poses a path
+     * @return the path without points closer than minDistance to the one before
+     */
+    public PoseArray removeStandstill(PoseArray poses)
+    {
+        int n = poses.size();
+        if (minDistance <= 0 || n < 3)
+            return poses;
+
+        boolean[] keep = new boolean[n];
+        int kept = 0;
+        for (int i = 0; i < n - 1; i++)
+        {
+            if (i == 0 || distance(poses, i, kept) >= minDistance)
+            {
+                keep[i] = true;
+                kept = i;
+            }
+        }
+
+        // the end is where the robot has to get, move the point before it instead
+        if (kept > 0 && distance(poses, n - 1, kept) < minDistance)
+            keep[kept] = false;
+        keep[n - 1] = true;
+
+        return select(poses, keep);
+    }
+
+    /**
+     * Ramer-Douglas-Peucker, with a stack of ranges instead of recursion so
+     * that a long straight path can not overflow the call stack.
+     * @param poses a path
+     * @return the points of the path needed to stay within tolerance of it
+     */
+    public PoseArray simplify(PoseArray poses)
+    {
+        int n = poses.size();
+        if (tolerance <= 0 || n < 3)
+            return poses;
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0)
+        {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double farthestDistance = tolerance;
+            for (int i = first + 1; i < last; i++)
+            {
+                double d = distanceToSegment(poses, i, first, last);
+                if (d > farthestDistance)
+                {
+                    farthest = i;
+                    farthestDistance = d;
+                }
+            }
+
+            if (farthest >= 0)
+            {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        return select(poses, keep);
+    }
+
+    /**
+     * Put points at equal distances along the path. A point gets the
+     * orientation of the path point its segment starts at.
+     * @param poses a path
+     * @return the path with a point every spacing meters and its last point
+     */
+    public PoseArray resample(PoseArray poses)
+    {
+        int n = poses.size();
+        if (spacing <= 0 || n < 2)
+            return poses;
+
+        // the last point is always put, so stop half a spacing before it
+        double limit = poses.length() - spacing / 2;
+
+        PoseArray path = new PoseArray((int)(limit / spacing) + 2);
+        double[] orientation = new double[4];
+        double next = 0;          // arc length of the next point to put
+        double start = 0;         // arc length at the start of segment i
+
+        for (int i = 0; i < n - 1; i++)
+        {
+            double length = distance(poses, i + 1, i);
+            poses.getOrientation(i, orientation);
+
+            while (next < start + length && next < limit)
+            {
+                double t = (next - start) / length;
+                path.add(poses.getX(i) + t * (poses.getX(i + 1) - poses.getX(i)),
+                        poses.getY(i) + t * (poses.getY(i + 1) - poses.getY(i)),
+                        poses.getZ(i) + t * (poses.getZ(i + 1) - poses.getZ(i)),
+                        orientation[0], orientation[1], orientation[2], orientation[3]);
+                next += spacing;
+            }
+            start += length;
+        }
+
+        poses.getOrientation(n - 1, orientation);
+        path.add(poses.getX(n - 1), poses.getY(n - 1), poses.getZ(n - 1),
+                orientation[0], orientation[1], orientation[2], orientation[3]);
+
+        return path;
+    }
+
+    private static PoseArray select(PoseArray poses, boolean[] keep)
+    {
+        PoseArray path = new PoseArray(poses.size());
+        double[] orientation = new double[4];
+
+        for (int i = 0; i < keep.length; i++)
+        {
+            if (keep[i])
+            {
+                poses.getOrientation(i, orientation);
+                path.add(poses.getX(i), poses.getY(i), poses.getZ(i),
+                        orientation[0], orientation[1], orientation[2], orientation[3]);
+            }
+        }
+        return path;
+    }
+
+    private static double distance(PoseArray poses, int i, int j)
+    {
+        double dx = poses.getX(i) - poses.getX(j);
+        double dy = poses.getY(i) - poses.getY(j);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // to the segment rather than the line, so a path that turns back is kept
+    private static double distanceToSegment(PoseArray poses, int i, int a, int b)
+    {
+        double sx = poses.getX(b) - poses.getX(a);
+        double sy = poses.getY(b) - poses.getY(a);
+        double px = poses.getX(i) - poses.getX(a);
+        double py = poses.getY(i) - poses.getY(a);
+
+        double squared = sx * sx + sy * sy;
+        double t = squared > 0 ? Math.max(0, Math.min(1, (px * sx + py * sy) / squared)) : 0;
+        double dx = px - t * sx;
+        double dy = py - t * sy;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return number of points after each step of the last process()
+     */
+    public String report()
+    {
+        return String.format("%d path points, %d without standstill, %d simplified, %d resampled",
+                loaded, moving, simplified, resampled);
+    }
+
+    public int getLoadedCount()
+    {
+        return loaded;
+    }
+
+    public int getProcessedCount()
+    {
+        return resampled;
+    }
+}
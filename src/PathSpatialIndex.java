@@ -0,0 +1,329 @@
+/**
+ * A k-d tree over the points of a path, to find the path again when the
+ * robot has lost it: after being pushed off course, or when the
+ * localization jumps. Built once when the path is loaded, it answers
+ * nearest, k-nearest and radius queries in about log n steps, without
+ * allocating.
+ *
+ * The tree is stored in arrays, with the median of every range of the
+ * arrays as the node that splits it. Every node also knows the smallest
+ * and largest path index below it, so a nearest point query can be limited
+ * to a window of path indexes, e.g. around the progress made so far. On a
+ * path that crosses itself or comes back the same way, that keeps the robot
+ * from skipping to a later part of the path that happens to be close.
+ *
+ * Queries keep their state in the index, so one index serves one thread.
+ */
+public class PathSpatialIndex
+{
+    private final double[] xs;          // points in tree order
+    private final double[] ys;
+    private final int[] indexes;        // path index of each point
+    private final boolean[] splitOnY;
+    private final int[] minIndex;       // smallest path index in the subtree of each node
+    private final int[] maxIndex;
+    private final int size;
+
+    // state of the query that is running
+    private double queryX;
+    private double queryY;
+    private int from;
+    private int to;
+    private int best;
+    private double bestSquared;
+    private int[] foundIndexes;
+    private double[] foundDistances;
+    private int found;
+
+    /**
+     * @param xs x of the path points
+     * @param ys y of the path points
+     */
+    public PathSpatialIndex(double[] xs, double[] ys)
+    {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("Uneven path");
+
+        size = xs.length;
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        indexes = new int[size];
+        splitOnY = new boolean[size];
+        minIndex = new int[size];
+        maxIndex = new int[size];
+
+        for (int i = 0; i < size; i++)
+            indexes[i] = i;
+
+        build(0, size);
+    }
+
+    // make the median of [lo, hi) split it, on the axis with the larger spread
+    private void build(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++)
+        {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        int mid = (lo + hi) >>> 1;
+        boolean onY = maxY - minY > maxX - minX;
+        select(lo, hi - 1, mid, onY);
+        splitOnY[mid] = onY;
+
+        build(lo, mid);
+        build(mid + 1, hi);
+
+        int min = indexes[mid];
+        int max = indexes[mid];
+        if (lo < mid)
+        {
+            int left = (lo + mid) >>> 1;
+            min = Math.min(min, minIndex[left]);
+            max = Math.max(max, maxIndex[left]);
+        }
+        if (mid + 1 < hi)
+        {
+            int right = (mid + 1 + hi) >>> 1;
+            min = Math.min(min, minIndex[right]);
+            max = Math.max(max, maxIndex[right]);
+        }
+        minIndex[mid] = min;
+        maxIndex[mid] = max;
+    }
+
+    // quickselect: put the k-th smallest of [lo, hi] on the axis at k
+    private void select(int lo, int hi, int k, boolean onY)
+    {
+        while (lo < hi)
+        {
+            double pivot = coordinate((lo + hi) >>> 1, onY);
+            int i = lo;
+            int j = hi;
+            while (i <= j)
+            {
+                while (coordinate(i, onY) < pivot)
+                    i++;
+                while (coordinate(j, onY) > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private double coordinate(int i, boolean onY)
+    {
+        return onY ? ys[i] : xs[i];
+    }
+
+    private void swap(int i, int j)
+    {
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int index = indexes[i];
+        indexes[i] = indexes[j];
+        indexes[j] = index;
+    }
+
+    /**
+     * @param x a point, e.g. the position of the robot
+     * @param y
+     * @return index of the closest path point, -1 for an empty path
+     */
+    public int nearest(double x, double y)
+    {
+        return nearest(x, y, 0, size - 1);
+    }
+
+    /**
+     * Find the closest path point among those with an index in a window,
+     * e.g. from a little before the progress made so far to some way ahead.
+     * @param x a point, e.g. the position of the robot
+     * @param y
+     * @param first smallest path index to consider
+     * @param last largest path index to consider
+     * @return index of the closest path point in the window, -1 if the window is empty
+     */
+    public int nearest(double x, double y, int first, int last)
+    {
+        queryX = x;
+        queryY = y;
+        from = first;
+        to = last;
+        best = -1;
+        bestSquared = Double.POSITIVE_INFINITY;
+
+        nearest(0, size);
+        return best;
+    }
+
+    private void nearest(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        if (maxIndex[mid] < from || minIndex[mid] > to)
+            return;
+
+        if (indexes[mid] >= from && indexes[mid] <= to)
+        {
+            double squared = squaredDistance(mid);
+            if (squared < bestSquared)
+            {
+                bestSquared = squared;
+                best = indexes[mid];
+            }
+        }
+
+        double diff = splitOnY[mid] ? queryY - ys[mid] : queryX - xs[mid];
+        if (diff < 0)
+        {
+            nearest(lo, mid);
+            if (diff * diff < bestSquared)
+                nearest(mid + 1, hi);
+        }
+        else
+        {
+            nearest(mid + 1, hi);
+            if (diff * diff < bestSquared)
+                nearest(lo, mid);
+        }
+    }
+
+    /**
+     * Find the k closest path points, k being the length of the arrays.
+     * @param x a point
+     * @param y
+     * @param outIndexes receives the path indexes, closest first
+     * @param outDistances receives their distances, same length as outIndexes
+     * @return number of points found, fewer than k only for a short path
+     */
+    public int nearest(double x, double y, int[] outIndexes, double[] outDistances)
+    {
+        queryX = x;
+        queryY = y;
+        foundIndexes = outIndexes;
+        foundDistances = outDistances;
+        found = 0;
+
+        if (outIndexes.length > 0)
+            kNearest(0, size);
+
+        for (int i = 0; i < found; i++)
+            outDistances[i] = Math.sqrt(outDistances[i]);
+        foundIndexes = null;
+        foundDistances = null;
+        return found;
+    }
+
+    // the distances are kept squared until the query is done
+    private void kNearest(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        int k = foundIndexes.length;
+        double squared = squaredDistance(mid);
+
+        if (found < k || squared < foundDistances[k - 1])
+        {
+            // insertion sort into the list of the closest so far
+            int i = found < k ? found++ : k - 1;
+            while (i > 0 && foundDistances[i - 1] > squared)
+            {
+                foundDistances[i] = foundDistances[i - 1];
+                foundIndexes[i] = foundIndexes[i - 1];
+                i--;
+            }
+            foundDistances[i] = squared;
+            foundIndexes[i] = indexes[mid];
+        }
+
+        double diff = splitOnY[mid] ? queryY - ys[mid] : queryX - xs[mid];
+        int near = diff < 0 ? lo : mid + 1;
+        int nearEnd = diff < 0 ? mid : hi;
+        int far = diff < 0 ? mid + 1 : lo;
+        int farEnd = diff < 0 ? hi : mid;
+
+        kNearest(near, nearEnd);
+        if (found < k || diff * diff < foundDistances[k - 1])
+            kNearest(far, farEnd);
+    }
+
+    /**
+     * Find the path points within a distance, in no particular order.
+     * @param x a point
+     * @param y
+     * @param radius the distance
+     * @param out receives the path indexes, as many as fit
+     * @return number of points within the distance, which may be more than fit in out
+     */
+    public int within(double x, double y, double radius, int[] out)
+    {
+        queryX = x;
+        queryY = y;
+        bestSquared = radius * radius;
+        foundIndexes = out;
+        found = 0;
+
+        within(0, size);
+
+        foundIndexes = null;
+        return found;
+    }
+
+    private void within(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        if (squaredDistance(mid) <= bestSquared)
+        {
+            if (found < foundIndexes.length)
+                foundIndexes[found] = indexes[mid];
+            found++;
+        }
+
+        double diff = splitOnY[mid] ? queryY - ys[mid] : queryX - xs[mid];
+        if (diff <= 0 || diff * diff <= bestSquared)
+            within(lo, mid);
+        if (diff >= 0 || diff * diff <= bestSquared)
+            within(mid + 1, hi);
+    }
+
+    private double squaredDistance(int i)
+    {
+        double dx = xs[i] - queryX;
+        double dy = ys[i] - queryY;
+        return dx * dx + dy * dy;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The poses of a whole path, position and orientation, stored column by
+ * column: one double[] for each of X, Y, Z, W and the quaternion's X, Y, Z.
+ * Bulk operations run over all poses at once in plain counted loops over
+ * the columns, which the JIT unrolls and, where no Math call is in the way,
+ * vectorizes. Results go into arrays supplied by the caller.
+ *
+ * A path of a couple of thousand points fits in the L1 and L2 caches this
+ * way, so e.g. the distance from the robot to every point of the path costs
+ * a few microseconds.
+ */
+public class PoseArray
+{
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double[] qw;
+    private double[] qx;
+    private double[] qy;
+    private double[] qz;
+    private int size;
+
+    /**
+     * @param capacity number of poses to make room for, the columns grow as needed
+     */
+    public PoseArray(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        qw = new double[capacity];
+        qx = new double[capacity];
+        qy = new double[capacity];
+        qz = new double[capacity];
+    }
+
+    /**
+     * Read the poses of a path file, orientation included.
+     * @param filename path file, a JSON array of {"Pose":...} objects
+     * @return the poses in the order of the file
+     * @throws IOException if the file can not be read or holds no poses
+     */
+    public static PoseArray load(String filename) throws IOException
+    {
+        PoseArray poses = new PoseArray(256);
+        double[] orientation = new double[4];
+        double[] position = new double[3];
+
+        JsonParser parser = new JsonFactory().createJsonParser(new File(filename));
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("Expected a JSON array in " + filename);
+
+            while (parser.nextToken() == JsonToken.START_OBJECT)
+            {
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+
+                    if ("Pose".equals(name))
+                        LokarriaJson.readPose(parser, orientation, position);
+                    else
+                        parser.skipChildren();
+                }
+
+                poses.add(position[0], position[1], position[2],
+                        orientation[0], orientation[1], orientation[2], orientation[3]);
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+
+        if (poses.size == 0)
+            throw new IOException("No path points in " + filename);
+
+        return poses;
+    }
+
+    /**
+     * Time the bulk operations on path files.
+     * @param args path files, by default the ones in ./input
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            args = new String[] { "./input/Path-to-bed.json", "./input/Path-around-table.json",
+                    "./input/Path-around-table-and-back.json", "./input/Path-from-bed.json" };
+        }
+
+        for (String file : args)
+        {
+            PoseArray poses = load(file);
+            int n = poses.size();
+            double[] a = new double[n];
+            double[] b = new double[n];
+            double sink = 0;
+
+            // let the JIT compile the loops first
+            for (int i = 0; i < 20000; i++)
+            {
+                sink += poses.yaws(a)[i % n];
+                sink += poses.distancesFrom(1, 2, a)[i % n];
+                sink += poses.bearingsFrom(1, 2, a)[i % n];
+                poses.toRobotFrame(1, 2, 0.5, a, b);
+                sink += b[i % n] + poses.nearest(1, 2);
+            }
+
+            int rounds = 2000;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+                sink += poses.yaws(a)[i % n];
+            long t1 = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+                sink += poses.distancesFrom(1, 2, a)[i % n];
+            long t2 = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+                sink += poses.bearingsFrom(1, 2, a)[i % n];
+            long t3 = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+            {
+                poses.toRobotFrame(1, 2, 0.5, a, b);
+                sink += b[i % n];
+            }
+            long t4 = System.nanoTime();
+            for (int i = 0; i < rounds; i++)
+                sink += poses.nearest(1, 2);
+            long t5 = System.nanoTime();
+
+            System.out.printf("%s: %d poses, %.1f m; yaws %.1f us, distances %.1f us, "
+                    + "bearings %.1f us, robot frame %.1f us, nearest %.1f us%s%n",
+                    file, n, poses.length(), (t1 - t0) / 1000.0 / rounds,
+                    (t2 - t1) / 1000.0 / rounds, (t3 - t2) / 1000.0 / rounds,
+                    (t4 - t3) / 1000.0 / rounds, (t5 - t4) / 1000.0 / rounds,
+                    sink == 0.123 ? "!" : "");
+        }
+    }
+
+    /**
+     * Append a pose.
+     * @param px position
+     * @param py
+     * @param pz
+     * @param w orientation quaternion
+     * @param ox
+     * @param oy
+     * @param oz
+     */
+    public void add(double px, double py, double pz, double w, double ox, double oy, double oz)
+    {
+        if (size == x.length)
+        {
+            int capacity = size * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+            qw = Arrays.copyOf(qw, capacity);
+            qx = Arrays.copyOf(qx, capacity);
+            qy = Arrays.copyOf(qy, capacity);
+            qz = Arrays.copyOf(qz, capacity);
+        }
+
+        x[size] = px;
+        y[size] = py;
+        z[size] = pz;
+        qw[size] = w;
+        qx[size] = ox;
+        qy[size] = oy;
+        qz[size] = oz;
+        size++;
+    }
+
+    /**
+     * Heading of every pose, from its orientation.
+     * @param out receives the yaw of pose i at out[i], in radians
+     * @return out
+     */
+    public double[] yaws(double[] out)
+    {
+        for (int i = 0; i < size; i++)
+            out[i] = QuaternionMath.yaw(qw[i], qx[i], qy[i], qz[i]);
+        return out;
+    }
+
+    /**
+     * Distance in the XY plane from a point to every pose.
+     * @param px the point
+     * @param py
+     * @param out receives the distance to pose i at out[i]
+     * @return out
+     */
+    public double[] distancesFrom(double px, double py, double[] out)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            out[i] = Math.sqrt(dx * dx + dy * dy);
+        }
+        return out;
+    }
+
+    /**
+     * Direction from a point to every pose.
+     * @param px the point
+     * @param py
+     * @param out receives the bearing to pose i at out[i], in radians
+     * @return out
+     */
+    public double[] bearingsFrom(double px, double py, double[] out)
+    {
+        for (int i = 0; i < size; i++)
+            out[i] = Math.atan2(y[i] - py, x[i] - px);
+        return out;
+    }
+
+    /**
+     * Positions of all poses as seen by the robot: X ahead, Y to the left.
+     * @param px position of the robot
+     * @param py
+     * @param heading of the robot, in radians
+     * @param outX receives how far ahead pose i is
+     * @param outY receives how far to the left pose i is
+     */
+    public void toRobotFrame(double px, double py, double heading, double[] outX, double[] outY)
+    {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        for (int i = 0; i < size; i++)
+        {
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            outX[i] = dx * cos + dy * sin;
+            outY[i] = dy * cos - dx * sin;
+        }
+    }
+
+    /**
+     * @param px a point
+     * @param py
+     * @return index of the pose closest to the point in the XY plane
+     */
+    public int nearest(double px, double py)
+    {
+        int best = 0;
+        double bestSquared = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < size; i++)
+        {
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            double squared = dx * dx + dy * dy;
+            if (squared < bestSquared)
+            {
+                bestSquared = squared;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return length of the path in the XY plane, in meters
+     */
+    public double length()
+    {
+        double length = 0;
+        for (int i = 1; i < size; i++)
+        {
+            double dx = x[i] - x[i - 1];
+            double dy = y[i] - y[i - 1];
+            length += Math.sqrt(dx * dx + dy * dy);
+        }
+        return length;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public double getX(int i)
+    {
+        return x[i];
+    }
+
+    public double getY(int i)
+    {
+        return y[i];
+    }
+
+    public double getZ(int i)
+    {
+        return z[i];
+    }
+
+    /**
+     * @param i a pose
+     * @param out receives W, X, Y, Z of its orientation
+     * @return out
+     */
+    public double[] getOrientation(int i, double[] out)
+    {
+        out[0] = qw[i];
+        out[1] = qx[i];
+        out[2] = qy[i];
+        out[3] = qz[i];
+        return out;
+    }
+
+    /**
+     * @return a copy of the X column, as long as the path
+     */
+    public double[] copyX()
+    {
+        return Arrays.copyOf(x, size);
+    }
+
+    /**
+     * @return a copy of the Y column, as long as the path
+     */
+    public double[] copyY()
+    {
+        return Arrays.copyOf(y, size);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Projects the last measured pose of the robot forward in time using the
+ * wheel speeds it was commanded since, so a controller can steer from where
+ * the robot is now rather than from where it was when localization sampled.
+ *
+ * All times are robot times in milliseconds. The robot is assumed to follow
+ * its commands at once; the projection is capped at a horizon so that a
+ * long silence from the robot does not send the estimate off on its own.
+ */
+public class PosePredictor
+{
+    private static final int COMMANDS = 16;
+
+    // recent commands, ordered by time in a ring
+    private final double[] commandTimes = new double[COMMANDS];
+    private final double[] linearSpeeds = new double[COMMANDS];
+    private final double[] angularSpeeds = new double[COMMANDS];
+    private int commands;
+    private int next;
+
+    private double x;
+    private double y;
+    private double heading;
+    private long poseTime;
+    private boolean hasPose;
+
+    private double horizonMillis = 500;
+
+    /**
+     * Set a measured pose.
+     * @param x
+     * @param y
+     * @param heading radians
+     * @param robotMillis TimeStamp of the measurement
+     */
+    public synchronized void updatePose(double x, double y, double heading, long robotMillis)
+    {
+        if (hasPose && robotMillis < poseTime)
+            return;     // an older response that arrived late
+
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        poseTime = robotMillis;
+        hasPose = true;
+    }
+
+    /**
+     * Note a command sent to the robot.
+     * @param linearSpeed m/s
+     * @param angularSpeed rad/s
+     * @param robotMillis robot time the command took effect
+     */
+    public synchronized void updateCommand(double linearSpeed, double angularSpeed, double robotMillis)
+    {
+        if (commands > 0 && robotMillis < commandTimes[(next + COMMANDS - 1) % COMMANDS])
+            robotMillis = commandTimes[(next + COMMANDS - 1) % COMMANDS];
+
+        commandTimes[next] = robotMillis;
+        linearSpeeds[next] = linearSpeed;
+        angularSpeeds[next] = angularSpeed;
+        next = (next + 1) % COMMANDS;
+        if (commands < COMMANDS)
+            commands++;
+    }
+
+    /**
+     * @param millis longest time a pose is projected forward
+     */
+    public synchronized void setHorizon(double millis)
+    {
+        horizonMillis = millis;
+    }
+
+    /**
+     * Predict the pose at a robot time.
+     * @param robotMillis the time to predict for
+     * @param out receives x, y, heading
+     * @return false if no pose has been measured yet
+     */
+    public synchronized boolean predict(double robotMillis, double[] out)
+    {
+        if (!hasPose)
+            return false;
+
+        out[0] = x;
+        out[1] = y;
+        out[2] = heading;
+
+        double t = poseTime;
+        double end = Math.min(robotMillis, poseTime + horizonMillis);
+
+        // walk the commands from oldest to newest, driving each one over the
+        // part of [t, end] in which it was the latest
+        double v = 0;
+        double w = 0;
+        for (int k = 0; k < commands && t < end; k++)
+        {
+            int i = (next - commands + k + COMMANDS) % COMMANDS;
+
+            if (commandTimes[i] > t)
+            {
+                double until = Math.min(commandTimes[i], end);
+                drive(out, v, w, (until - t) / 1000);
+                t = until;
+            }
+            v = linearSpeeds[i];
+            w = angularSpeeds[i];
+        }
+
+        if (t < end)
+            drive(out, v, w, (end - t) / 1000);
+
+        out[2] = Math.atan2(Math.sin(out[2]), Math.cos(out[2]));
+        return true;
+    }
+
+    // move a pose (x, y, heading) along the arc given by the speeds
+    private static void drive(double[] pose, double v, double w, double seconds)
+    {
+        double dTheta = w * seconds;
+
+        if (Math.abs(dTheta) < 1e-9)
+        {
+            pose[0] += v * seconds * Math.cos(pose[2]);
+            pose[1] += v * seconds * Math.sin(pose[2]);
+        }
+        else
+        {
+            double r = v / w;
+            pose[0] += r * (Math.sin(pose[2] + dTheta) - Math.sin(pose[2]));
+            pose[1] -= r * (Math.cos(pose[2] + dTheta) - Math.cos(pose[2]));
+        }
+        pose[2] += dTheta;
+    }
+}
@@ -15,6 +15,13 @@ public class Position
       this.y = y;
    }
 
+   // Move this position, so one object can be reused for a moving robot
+   public void set(double x, double y)
+   {
+      this.x = x;
+      this.y = y;
+   }
+
    public double getX() { return x; }
    public double getY() { return y; }
 
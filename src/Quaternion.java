@@ -74,7 +74,7 @@ public class Quaternion
      */
     public double[] heading()
     {
-        return rotate(new Quaternion(0.0, 1.0, 0.0, 0.0)).getVector();
+        return QuaternionMath.rotate(data[W], data[X], data[Y], data[Z], 1.0, 0.0, 0.0, new double[3]);
     }
 
     /**
@@ -93,12 +93,10 @@ public class Quaternion
      */
     public Quaternion multiply(Quaternion q)
     {
-        return new Quaternion(new double[] {
-                data[W] * q.data[W] - data[X]*q.data[X] - data[Y]*q.data[Y] - data[Z]* q.data[Z],
-                data[W] * q.data[X] + data[X]*q.data[W] + data[Y]*q.data[Z] - data[Z]* q.data[Y],
-                data[W] * q.data[Y] - data[X]*q.data[Z] + data[Y]*q.data[W] + data[Z]* q.data[X],
-                data[W] * q.data[Z] + data[X]*q.data[Y] - data[Y]*q.data[X] + data[Z]* q.data[W]
-        });
+        Quaternion product = new Quaternion(0.0, 0.0, 0.0, 0.0);
+        QuaternionMath.multiply(data[W], data[X], data[Y], data[Z],
+                q.data[W], q.data[X], q.data[Y], q.data[Z], product.data);
+        return product;
     }
 
 }
@@ -0,0 +1,119 @@
+/**
+ * Quaternion operations on plain doubles, for code that runs on every
+ * localization tick. Quaternions are passed as their four elements
+ * (W, X, Y, Z); results are either returned as a scalar or written into an
+ * array supplied by the caller, so nothing is allocated.
+ *
+ * The angles are the Z-Y-X (yaw, pitch, roll) Tait-Bryan angles. They do
+ * not require a unit quaternion: the norm cancels out, so the robot's
+ * orientation can be used as it arrives.
+ */
+public final class QuaternionMath
+{
+    private QuaternionMath()
+    {
+    }
+
+    /**
+     * Hamilton product a * b.
+     * @param out receives W, X, Y, Z of the product, may not alias anything
+     * @return out
+     */
+    public static double[] multiply(double aw, double ax, double ay, double az,
+                                    double bw, double bx, double by, double bz, double[] out)
+    {
+        out[0] = aw * bw - ax * bx - ay * by - az * bz;
+        out[1] = aw * bx + ax * bw + ay * bz - az * by;
+        out[2] = aw * by - ax * bz + ay * bw + az * bx;
+        out[3] = aw * bz + ax * by - ay * bx + az * bw;
+        return out;
+    }
+
+    /**
+     * @param out receives W, X, Y, Z of the conjugate
+     * @return out
+     */
+    public static double[] conjugate(double w, double x, double y, double z, double[] out)
+    {
+        out[0] = w;
+        out[1] = -x;
+        out[2] = -y;
+        out[3] = -z;
+        return out;
+    }
+
+    /**
+     * Rotate the vector v by q, i.e. q * (0, v) * conjugate(q). For a
+     * quaternion that is not a unit quaternion the result is also scaled by
+     * its squared norm.
+     * @param out receives X, Y, Z of the rotated vector
+     * @return out
+     */
+    public static double[] rotate(double w, double x, double y, double z,
+                                  double vx, double vy, double vz, double[] out)
+    {
+        // t = q * (0, v)
+        double tw = -x * vx - y * vy - z * vz;
+        double tx = w * vx + y * vz - z * vy;
+        double ty = w * vy - x * vz + z * vx;
+        double tz = w * vz + x * vy - y * vx;
+
+        // t * conjugate(q), of which W is zero
+        out[0] = -tw * x + tx * w - ty * z + tz * y;
+        out[1] = -tw * y + tx * z + ty * w - tz * x;
+        out[2] = -tw * z - tx * y + ty * x + tz * w;
+        return out;
+    }
+
+    /**
+     * @return rotation about the Z axis, the heading of the robot, in radians
+     */
+    public static double yaw(double w, double x, double y, double z)
+    {
+        return Math.atan2(2 * (w * z + x * y), w * w + x * x - y * y - z * z);
+    }
+
+    /**
+     * @return rotation about the Y axis, in radians, within [-pi/2, pi/2]
+     */
+    public static double pitch(double w, double x, double y, double z)
+    {
+        double norm = w * w + x * x + y * y + z * z;
+        if (norm == 0)
+            return 0;
+        double s = 2 * (w * y - x * z) / norm;
+        return Math.asin(Math.max(-1, Math.min(1, s)));
+    }
+
+    /**
+     * @return rotation about the X axis, in radians
+     */
+    public static double roll(double w, double x, double y, double z)
+    {
+        return Math.atan2(2 * (w * x + y * z), w * w - x * x - y * y + z * z);
+    }
+
+    /**
+     * Scale to a unit quaternion. The zero quaternion becomes the identity.
+     * @param out receives W, X, Y, Z
+     * @return out
+     */
+    public static double[] normalize(double w, double x, double y, double z, double[] out)
+    {
+        double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        if (norm == 0)
+        {
+            out[0] = 1;
+            out[1] = 0;
+            out[2] = 0;
+            out[3] = 0;
+            return out;
+        }
+
+        out[0] = w / norm;
+        out[1] = x / norm;
+        out[2] = y / norm;
+        out[3] = z / norm;
+        return out;
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scanning and number conversion straight on the bytes of a JSON body, for
+ * responses that index their body and decode fields only when asked.
+ * Nothing here creates objects, except for the rare number that has to go
+ * through Double.parseDouble.
+ *
+ * Positions are indexes into the byte array; every method takes the end of
+ * the body and fails with an IOException rather than run past it.
+ */
+final class RawJson
+{
+    // the powers of ten that are exactly doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private RawJson()
+    {
+    }
+
+    /**
+     * @return index of the first byte at or after i that is not white space
+     */
+    static int skipWhitespace(byte[] b, int i, int end)
+    {
+        while (i < end && (b[i] == ' ' || b[i] == '\n' || b[i] == '\r' || b[i] == '\t'))
+            i++;
+        return i;
+    }
+
+    /**
+     * @param i index of the opening quote
+     * @return index after the closing quote
+     */
+    static int skipString(byte[] b, int i, int end) throws IOException
+    {
+        for (i++; i < end; i++)
+        {
+            if (b[i] == '\\')
+                i++;
+            else if (b[i] == '"')
+                return i + 1;
+        }
+        throw new IOException("Unterminated JSON string");
+    }
+
+    /**
+     * @param i index of the first byte of a value
+     * @return index after the value
+     */
+    static int skipValue(byte[] b, int i, int end) throws IOException
+    {
+        if (i >= end)
+            throw new IOException("Missing JSON value");
+
+        if (b[i] == '"')
+            return skipString(b, i, end);
+
+        if (b[i] == '{' || b[i] == '[')
+        {
+            int depth = 0;
+            while (i < end)
+            {
+                byte c = b[i];
+                if (c == '"')
+                {
+                    i = skipString(b, i, end);
+                    continue;
+                }
+                if (c == '{' || c == '[')
+                    depth++;
+                else if (c == '}' || c == ']')
+                {
+                    if (--depth == 0)
+                        return i + 1;
+                }
+                i++;
+            }
+            throw new IOException("Unterminated JSON object or array");
+        }
+
+        // number, true, false or null
+        while (i < end && b[i] != ',' && b[i] != '}' && b[i] != ']'
+                && b[i] != ' ' && b[i] != '\n' && b[i] != '\r' && b[i] != '\t')
+            i++;
+        return i;
+    }
+
+    /**
+     * Move from the separator after a member to the start of the next key.
+     * @param i index after a member value
+     * @return index of the next key's quote, or of the closing brace
+     */
+    static int nextMember(byte[] b, int i, int end) throws IOException
+    {
+        i = skipWhitespace(b, i, end);
+        if (i < end && b[i] == ',')
+            i = skipWhitespace(b, i + 1, end);
+        if (i >= end || (b[i] != '"' && b[i] != '}'))
+            throw new IOException("Malformed JSON object");
+        return i;
+    }
+
+    /**
+     * @param i index of the quote of a key
+     * @return index of the value of that key
+     */
+    static int memberValue(byte[] b, int i, int end) throws IOException
+    {
+        i = skipWhitespace(b, skipString(b, i, end), end);
+        if (i >= end || b[i] != ':')
+            throw new IOException("Expected ':' in JSON object");
+        return skipWhitespace(b, i + 1, end);
+    }
+
+    /**
+     * @param i index of the quote of a key
+     * @param key the key without quotes, ASCII
+     * @return true if the key at i is exactly key
+     */
+    static boolean keyEquals(byte[] b, int i, int end, byte[] key)
+    {
+        int last = i + key.length + 1;
+        if (last >= end || b[last] != '"')
+            return false;
+        for (int k = 0; k < key.length; k++)
+        {
+            if (b[i + 1 + k] != key[k])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record where the values of the given keys of an object start.
+     * @param i index of the opening brace
+     * @param keys the keys to look for
+     * @param out receives the value index of keys[k] at out[base + k], -1 if absent
+     * @param base first slot of out to use
+     * @return index after the closing brace
+     */
+    static int indexObject(byte[] b, int i, int end, byte[][] keys, int[] out, int base)
+            throws IOException
+    {
+        for (int k = 0; k < keys.length; k++)
+            out[base + k] = -1;
+
+        if (i >= end || b[i] != '{')
+            throw new IOException("Expected a JSON object");
+
+        i = skipWhitespace(b, i + 1, end);
+        while (i < end && b[i] != '}')
+        {
+            int key = i;
+            i = memberValue(b, i, end);
+
+            for (int k = 0; k < keys.length; k++)
+            {
+                if (keyEquals(b, key, end, keys[k]))
+                {
+                    out[base + k] = i;
+                    break;
+                }
+            }
+
+            i = nextMember(b, skipValue(b, i, end), end);
+        }
+        return i + 1;
+    }
+
+    /**
+     * Convert a number, or a number in a string as the robot sometimes
+     * sends. Up to 15 significant digits with a decimal exponent of at most
+     * 22 are converted exactly, as in Clinger's fast path. Up to 19 digits,
+     * like the full precision doubles the robot sends, are rounded twice
+     * and may be one unit in the last place off. Anything else goes through
+     * Double.parseDouble.
+     * @param i index of the value
+     * @return the number, 0 for null
+     */
+    static double parseDouble(byte[] b, int i, int end) throws IOException
+    {
+        if (i < end && b[i] == '"')
+            return parseDouble(b, i + 1, skipString(b, i, end) - 1);
+        if (i < end && b[i] == 'n')
+            return 0;
+
+        int start = i;
+        boolean negative = i < end && b[i] == '-';
+        if (negative || (i < end && b[i] == '+'))
+            i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+
+        for (; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+        {
+            any = true;
+            if (digits > 0 || b[i] != '0')
+            {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                digits++;
+            }
+        }
+        if (i < end && b[i] == '.')
+        {
+            for (i++; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+            {
+                any = true;
+                if (digits > 0 || b[i] != '0')
+                {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+        if (i < end && (b[i] == 'e' || b[i] == 'E'))
+        {
+            i++;
+            boolean negativeExponent = i < end && b[i] == '-';
+            if (negativeExponent || (i < end && b[i] == '+'))
+                i++;
+
+            int e = 0;
+            for (; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+                e = Math.min(e * 10 + (b[i] - '0'), 100000);
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (!any)
+            throw new IOException("Malformed JSON number");
+        if (mantissa == 0 && digits == 0)
+            return negative ? -0.0 : 0.0;
+
+        if (digits <= 19 && exponent >= -22 && exponent <= 22
+                && (digits < 19 || mantissa > 0))
+        {
+            // exact if the mantissa fits in 53 bits, else rounded twice
+            double value = (double)mantissa;
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        return Double.parseDouble(new String(b, start, i - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Convert an integer, or an integer in a string.
+     * @param i index of the value
+     * @return the number, 0 for null
+     */
+    static long parseLong(byte[] b, int i, int end) throws IOException
+    {
+        if (i < end && b[i] == '"')
+            return parseLong(b, i + 1, skipString(b, i, end) - 1);
+        if (i < end && b[i] == 'n')
+            return 0;
+
+        boolean negative = i < end && b[i] == '-';
+        if (negative)
+            i++;
+
+        int start = i;
+        long value = 0;
+        for (; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+            value = value * 10 + (b[i] - '0');
+
+        if (i == start)
+            throw new IOException("Malformed JSON integer");
+        if (i < end && (b[i] == '.' || b[i] == 'e' || b[i] == 'E'))
+            return (long)parseDouble(b, negative ? start - 1 : start, end);
+        return negative ? -value : value;
+    }
+}
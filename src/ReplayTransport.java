@@ -0,0 +1,94 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A transport that answers from a recorded session instead of a robot.
+ * Each path is served its recorded responses in order, so a controller
+ * sees the same localization and laser data as in the recorded run.
+ * Requests sent to the robot are accepted and answered with the recorded
+ * status.
+ *
+ * With a time scale of 1 the responses come at the pace they were
+ * recorded, 2 twice as fast and so on; 0 replays as fast as possible.
+ */
+public class ReplayTransport implements Transport
+{
+    private final SessionLog log;
+    private final double timeScale;
+    private final HashMap<String, SessionLog.Cursor> getCursors =
+            new HashMap<String, SessionLog.Cursor>();
+    private final HashMap<String, SessionLog.Cursor> postCursors =
+            new HashMap<String, SessionLog.Cursor>();
+    private long startNanos = -1;
+
+    /**
+     * @param log recorded session
+     * @param timeScale replay speed relative to the recording, 0 for no waiting
+     */
+    public ReplayTransport(SessionLog log, double timeScale)
+    {
+        this.log = log;
+        this.timeScale = timeScale;
+    }
+
+    public synchronized int get(String path, HttpBody body) throws IOException
+    {
+        SessionLog.Cursor c = advance(path, true);
+        if (c == null)
+            throw new EOFException("No more recorded responses for " + path);
+
+        pace(c.getNanos());
+        c.copyPayload(body);
+        return c.getStatus();
+    }
+
+    public synchronized int post(String path, byte[] data, int offset, int length)
+            throws IOException
+    {
+        SessionLog.Cursor c = advance(path, false);
+        if (c == null)
+            return SimulatedRobot.NO_CONTENT;
+
+        pace(c.getNanos());
+        return c.getStatus();
+    }
+
+    public void close()
+    {
+    }
+
+    // move the cursor of the path to its next GET or POST record
+    private SessionLog.Cursor advance(String path, boolean get)
+    {
+        HashMap<String, SessionLog.Cursor> cursors = get ? getCursors : postCursors;
+        SessionLog.Cursor c = cursors.get(path);
+        if (c == null)
+        {
+            c = log.cursor();
+            cursors.put(path, c);
+        }
+
+        while (c.next())
+        {
+            if (c.isGet() == get && c.pathEquals(path))
+                return c;
+        }
+        return null;
+    }
+
+    private void pace(long recordedNanos)
+    {
+        if (timeScale <= 0)
+            return;
+
+        long now = System.nanoTime();
+        if (startNanos < 0)
+            startNanos = now - (long)(recordedNanos / timeScale);
+
+        long wait = startNanos + (long)(recordedNanos / timeScale) - now;
+        if (wait > 0)
+            LockSupport.parkNanos(wait);
+    }
+}
@@ -1,13 +1,12 @@
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.*;
@@ -20,6 +19,42 @@ import com.fasterxml.jackson.annotation.*;
  * It uses Java -> JSON -> HttpRequest -> Network -> DssHost32 ->
  * Lokarria(Robulab) -> MRDS4
  *
+ * The network part is done by a Transport. By default every request opens
+ * its own URL connection, a pooled mode keeps persistent HTTP/1.1
+ * connections open and reuses them for all Lokarria paths.
+ *
+ * Responses that implement StreamingResponse are decoded directly from the
+ * JSON token stream, all others are first parsed into a Map. A LazyResponse
+ * only gets the raw bytes and decodes the fields that are asked for. In the
+ * same way an EncodableRequest writes its own body into a reused buffer.
+ *
+ * Every call through putRequest and getResponse is timed and counted per
+ * Lokarria path, see getMetrics.
+ *
+ * Requests can carry a deadline, a System.nanoTime() value after which they
+ * are not worth sending any more. Over a TimedTransport the time left is
+ * also the timeout of the call, which then throws DeadlineExceededException
+ * if it is not answered in time. Responses read with a deadline are checked
+ * against a freshness bound: if their TimeStamp is further behind the robot
+ * clock than the bound they are flagged as stale.
+ *
+ * The robot clock is continuously estimated from response TimeStamps and
+ * round trip times, and getPoseAtNow projects the last localization to the
+ * present with the drive commands sent since. The local side of that
+ * estimate is System.nanoTime, or the clock of a simulation, see
+ * setTimeSource. Localizations only feed the projection once a pose has been
+ * asked for, so a caller that never does keeps lazy decoding lazy.
+ *
+ * A session can be recorded to a file with setRecorder and replayed later
+ * through a ReplayTransport.
+ *
+ * Reads can optionally be hedged to cut the latency tail, see setHedging.
+ *
+ * Every call also comes in an asynchronous flavour that returns a
+ * CompletableFuture, so that one controller thread can keep several requests
+ * in flight. The asynchronous calls run on an executor, by default a pool of
+ * daemon threads that is created on first use.
+ *
  * Most methods can throw an exception - in this example, they are all thrown out to the
  * operating system. A real implementation should take care of the different
  * exception types.
@@ -37,9 +72,46 @@ import com.fasterxml.jackson.annotation.*;
  */
 public class RobotCommunication
 {
-    private String host;
-    private int port;
+    /** Status of a request dropped unsent because its deadline had passed */
+    public static final int EXPIRED = -1;
+    /** Status of a response within the freshness bound */
+    public static final int FRESH = 0;
+    /** Status of a response older than the freshness bound */
+    public static final int STALE = 1;
+
+    private Transport transport;
     private ObjectMapper mapper;
+    private JsonFactory jsonFactory;
+    private final CommunicationMetrics metrics;
+    private Executor executor;
+    private ExecutorService ownExecutor;      // set if the executor was created here
+
+    // newest robot TimeStamp seen and the local time it was seen, guarded by this
+    private long robotTime;
+    private long robotTimeSeenNanos;
+    private volatile long freshnessBound = Long.MAX_VALUE;
+    private volatile HedgedReader hedgedReader;
+    private volatile SessionRecorder recorder;
+    private final ClockSync clockSync = new ClockSync();
+    private volatile TimeSource clock = TimeSource.SYSTEM;
+    private final PosePredictor posePredictor = new PosePredictor();
+    private volatile boolean predicting;
+
+    // body buffers per calling thread, reused between requests and responses
+    private final ThreadLocal<HttpBody> bodies = new ThreadLocal<HttpBody>()
+    {
+        protected HttpBody initialValue()
+        {
+            return new HttpBody();
+        }
+    };
+    private final ThreadLocal<HttpBody> requestBodies = new ThreadLocal<HttpBody>()
+    {
+        protected HttpBody initialValue()
+        {
+            return new HttpBody(256);
+        }
+    };
 
     /**
      * Create a new communications object.
@@ -50,11 +122,49 @@ public class RobotCommunication
      */
     public RobotCommunication(String host, int port)
     {
-        this.host = host;
-        this.port = port;
+        this(new UrlConnectionTransport(host, port));
+    }
+
+    /**
+     * Create a new communications object that keeps a pool of persistent
+     * connections to the robot.
+     *
+     * @param host normally http://127.0.0.1
+     * @param port normally 50000
+     * @param poolSize number of connections to keep open
+     */
+    public RobotCommunication(String host, int port, int poolSize)
+    {
+        this(HttpConnectionPool.create(host, port, poolSize));
+    }
+
+    /**
+     * Create a new communications object on top of a given transport, e.g.
+     * HttpConnectionPool.createNio(host, port, size) for persistent
+     * connections over socket channels.
+     *
+     * @param transport
+     */
+    public RobotCommunication(Transport transport)
+    {
+        this(transport, new CommunicationMetrics());
+    }
+
+    /**
+     * Create a new communications object that records into given metrics,
+     * which may be shared with other communications objects.
+     *
+     * @param transport
+     * @param metrics
+     */
+    public RobotCommunication(Transport transport, CommunicationMetrics metrics)
+    {
+        this.transport = transport;
+        this.metrics = metrics;
 
         // This is used by the JSON library to convert to/from JSON
         mapper = new ObjectMapper();
+        jsonFactory = new JsonFactory();
     }
 
     /**
@@ -65,30 +175,235 @@ public class RobotCommunication
      */
     public int putRequest(Request r) throws Exception
     {
-        URL url = new URL(host + ":" + port + r.getPath());
+        return putRequest(r, false, 0);
+    }
+
+    private int putRequest(Request r, boolean timed, long deadline) throws Exception
+    {
+        String path = r.getPath();
+        EndpointMetrics m = metrics.endpoint(path);
+        long start = System.nanoTime();
+        long sent = clock.nanoTime();
 
-        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        try
+        {
+            byte[] data;
+            int length;
 
-        connection.setDoOutput(true);
+            if (r instanceof EncodableRequest)
+            {
+                HttpBody body = requestBodies.get();
+                body.clear();
+                ((EncodableRequest)r).writeTo(body);
 
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setUseCaches (false);
+                data = body.array();
+                length = body.length();
+            }
+            else
+            {
+                // construct a JSON body
+                data = mapper.writeValueAsBytes(r.getData());
+                length = data.length;
+            }
 
-        OutputStreamWriter out = new OutputStreamWriter(
-                connection.getOutputStream());
+            // write it to the web server and wait for response code
+            int rc;
+            if (timed && transport instanceof TimedTransport)
+                rc = ((TimedTransport)transport).post(path, data, 0, length, deadline);
+            else
+                rc = transport.post(path, data, 0, length);
 
-        // construct a JSON string
-        String json = mapper.writeValueAsString(r.getData());
+            SessionRecorder rec = recorder;
+            if (rec != null)
+            {
+                try
+                {
+                    rec.recordPost(path, rc, data, 0, length);
+                }
+                catch (IOException e)
+                {
+                    stopRecording(rec, e);
+                }
+            }
 
-        // write it to the web server
-        out.write(json);
-        out.close();
+            long end = System.nanoTime();
+            if (rc >= 400)
+            {
+                m.recordError(end - start);
+            }
+            else
+            {
+                m.recordSuccess(end - start, length, 0);
 
-        // wait for response code
-        int rc = connection.getResponseCode();
+                if (r instanceof DifferentialDriveRequest && clockSync.isSynchronized())
+                {
+                    // assume the command took effect half way through the round trip
+                    DifferentialDriveRequest dr = (DifferentialDriveRequest)r;
+                    long received = clock.nanoTime();
+                    posePredictor.updateCommand(dr.getLinearSpeed(), dr.getAngularSpeed(),
+                            clockSync.toRobotMillis(sent + (received - sent) / 2));
+                }
+            }
+
+            return rc;
+        }
+        catch (Exception e)
+        {
+            m.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
 
-        return rc;
+    /**
+     * Send a request to the robot unless its deadline has passed, and wait
+     * for the answer no longer than until the deadline.
+     * @param r request to send
+     * @param deadline System.nanoTime() after which the request is dropped
+     * @return response code from the connection, or EXPIRED if not sent
+     * @throws DeadlineExceededException if sent but not answered in time
+     * @throws Exception
+     */
+    public int putRequest(Request r, long deadline) throws Exception
+    {
+        if (System.nanoTime() - deadline >= 0)
+        {
+            metrics.endpoint(r.getPath()).recordExpired();
+            return EXPIRED;
+        }
+        return putRequest(r, true, deadline);
+    }
+
+    /**
+     * Get a response from the robot unless the deadline has passed, and check
+     * that it is fresh. The read waits no longer than until the deadline.
+     * @param r response to fill in
+     * @param deadline System.nanoTime() after which the read is dropped
+     * @return FRESH, STALE, or EXPIRED if the read was not made
+     * @throws DeadlineExceededException if the read was not answered in time
+     * @throws Exception
+     */
+    public int getResponse(Response r, long deadline) throws Exception
+    {
+        EndpointMetrics m = metrics.endpoint(r.getPath());
+
+        if (System.nanoTime() - deadline >= 0)
+        {
+            m.recordExpired();
+            return EXPIRED;
+        }
+
+        getResponse(r, true, deadline);
+
+        if (getAge(r) > freshnessBound)
+        {
+            m.recordStale();
+            return STALE;
+        }
+        return FRESH;
+    }
+
+    /**
+     * Set how far behind the robot clock a response may be and still count as
+     * fresh. Unbounded until set.
+     * @param millis largest age in robot time (milliseconds)
+     */
+    public void setFreshnessBound(long millis)
+    {
+        freshnessBound = millis;
+    }
+
+    /**
+     * Hedge reads: when a read has not finished within the given percentile
+     * of the recent latency of its path, a second read is started on another
+     * connection and the first answer wins. Hedges and hedge wins are counted
+     * in the metrics. Use with a pooled transport, so that the second read
+     * gets a connection of its own.
+     * @param percentile e.g. 0.95, or 0 to turn hedging off
+     * @param minDelayMillis never hedge sooner than this
+     */
+    public void setHedging(double percentile, long minDelayMillis)
+    {
+        if (percentile <= 0)
+            hedgedReader = null;
+        else
+            hedgedReader = new HedgedReader(transport, getExecutor(), percentile,
+                    minDelayMillis * 1000000);
+    }
+
+    /**
+     * The pose of the robot now: the last localization read, projected
+     * forward with the drive commands sent since, using the robot clock as
+     * estimated from the response TimeStamps and round trip times.
+     * @param out receives x, y, heading
+     * @return false until a localization has been read after the first call
+     */
+    public boolean getPoseAtNow(double[] out)
+    {
+        predicting = true;
+        if (!clockSync.isSynchronized())
+            return false;
+
+        return posePredictor.predict(clockSync.toRobotMillis(clock.nanoTime()), out);
+    }
+
+    /**
+     * Set the local clock the robot clock is estimated against, e.g. the
+     * clock of a SimulatedTransport, whose robot only moves when asked to.
+     * Latencies in the metrics are always measured with System.nanoTime.
+     * @param clock the local clock, TimeSource.SYSTEM by default
+     */
+    public void setTimeSource(TimeSource clock)
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the estimate of the robot clock against the local clock
+     */
+    public ClockSync getClockSync()
+    {
+        return clockSync;
+    }
+
+    public PosePredictor getPosePredictor()
+    {
+        predicting = true;
+        return posePredictor;
+    }
+
+    /**
+     * Record every request and response from now on, or stop recording.
+     * If the recorder fails, e.g. because the disk is full, recording stops
+     * and the requests go on. The recorder is not closed here.
+     * @param recorder where to record, null to stop
+     */
+    public synchronized void setRecorder(SessionRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    /**
+     * How far a response is behind the robot clock. The robot clock is
+     * estimated as the newest TimeStamp seen so far plus the local time passed
+     * since it was first seen, so when the robot stalls and keeps returning
+     * the same TimeStamp its responses age.
+     * @param r a response read through this object
+     * @return age in robot time (milliseconds), 0 if unknown
+     */
+    public long getAge(Response r)
+    {
+        long timestamp = r.getTimestamp();
+        if (timestamp <= 0)
+            return 0;
+
+        synchronized (this)
+        {
+            if (robotTime == 0)
+                return 0;
+
+            long now = robotTime + (clock.nanoTime() - robotTimeSeenNanos) / 1000000;
+            return Math.max(0, now - timestamp);
+        }
     }
 
     /**
@@ -99,24 +414,296 @@ public class RobotCommunication
      */
     public Response getResponse(Response r) throws Exception
     {
-        URL url = new URL(host + ":" + port + r.getPath());
-        System.out.println(url);
+        return getResponse(r, false, 0);
+    }
+
+    private Response getResponse(Response r, boolean timed, long deadline) throws Exception
+    {
+        String path = r.getPath();
+        EndpointMetrics m = metrics.endpoint(path);
+        long start = System.nanoTime();
+        long sent = clock.nanoTime();
+
+        try
+        {
+            HttpBody body = bodies.get();
+            HedgedReader hedged = hedgedReader;
+
+            // a read with a deadline is not hedged, the deadline already cuts its tail
+            int rc;
+            if (timed && transport instanceof TimedTransport)
+                rc = ((TimedTransport)transport).get(path, body, deadline);
+            else if (hedged != null)
+                rc = hedged.get(path, m, body);
+            else
+                rc = transport.get(path, body);
+
+            SessionRecorder rec = recorder;
+            if (rec != null)
+            {
+                try
+                {
+                    rec.recordGet(path, rc, body.array(), 0, body.length());
+                }
+                catch (IOException e)
+                {
+                    stopRecording(rec, e);
+                }
+            }
+            if (rc >= 400)
+                throw new IOException("HTTP " + rc + " from " + path);
+
+            decode(r, body);
+
+            long end = System.nanoTime();
+            long timestamp = r.getTimestamp();
+            observeRobotTime(timestamp);
+            clockSync.addSample(sent, clock.nanoTime(), timestamp);
+
+            // the predictor needs every pose field, which would undo lazy
+            // decoding for a caller that does not use it
+            if (predicting && r instanceof LocalizationResponse
+                    && !(r instanceof LazyResponse && ((LazyResponse)r).isUnchanged()))
+            {
+                LocalizationResponse lr = (LocalizationResponse)r;
+                posePredictor.updatePose(lr.getX(), lr.getY(), lr.getHeadingAngle(), timestamp);
+            }
+
+            m.recordSuccess(end - start, 0, body.length());
+            return r;
+        }
+        catch (Exception e)
+        {
+            m.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Send a request to the robot without waiting for the answer.
+     * @param r request to send, it must not be changed until the future completes
+     * @return future response code from the connection (the web server)
+     */
+    public CompletableFuture<Integer> putRequestAsync(final Request r)
+    {
+        final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+        getExecutor().execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.complete(putRequest(r));
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
 
-        // open a connection to the web server and then get the resulting data
-        URLConnection connection = url.openConnection();
-        BufferedReader in = new BufferedReader(new InputStreamReader(
-                connection.getInputStream()));
+        return result;
+    }
 
-        // map it to a Java Map
-        Map<String, Object> data = mapper.readValue(in, Map.class);
-        r.setData(data);
+    /**
+     * Get a response from the robot without waiting for it.
+     * @param r response to fill in, it must not be read until the future completes
+     * @return future completed with the same object as the parameter
+     */
+    public <T extends Response> CompletableFuture<T> getResponseAsync(final T r)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
 
-        in.close();
+        getExecutor().execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    getResponse(r);
+                    result.complete(r);
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
 
-        return r;
+        return result;
     }
 
+    /**
+     * Send a request without waiting, dropping it if it is still queued when
+     * the deadline passes.
+     * @param r request to send, it must not be changed until the future completes
+     * @param deadline System.nanoTime() after which the request is dropped
+     * @return future response code, or EXPIRED if not sent
+     */
+    public CompletableFuture<Integer> putRequestAsync(final Request r, final long deadline)
+    {
+        final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
 
-}
+        getExecutor().execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.complete(putRequest(r, deadline));
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Get a response without waiting, dropping the read if it is still queued
+     * when the deadline passes.
+     * @param r response to fill in, it must not be read until the future completes
+     * @param deadline System.nanoTime() after which the read is dropped
+     * @return future FRESH, STALE or EXPIRED
+     */
+    public CompletableFuture<Integer> getResponseAsync(final Response r, final long deadline)
+    {
+        final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+        getExecutor().execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.complete(getResponse(r, deadline));
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Run the asynchronous calls on the given executor instead of a private
+     * thread pool. Must be called before the first asynchronous call.
+     * @param executor
+     */
+    public synchronized void setExecutor(Executor executor)
+    {
+        if (this.executor != null)
+            throw new IllegalStateException("Executor already in use");
+
+        this.executor = executor;
+    }
+
+    private synchronized Executor getExecutor()
+    {
+        if (executor == null)
+        {
+            ownExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread t = new Thread(runnable, "robot-io-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor = ownExecutor;
+        }
+        return executor;
+    }
+
+    // a failed recording must not fail the robot, it only ends the recording
+    private void stopRecording(SessionRecorder rec, IOException e)
+    {
+        synchronized (this)
+        {
+            if (recorder != rec)
+                return;
+            recorder = null;
+        }
+        System.err.println("Session recording stopped: " + e);
+    }
+
+    private synchronized void observeRobotTime(long timestamp)
+    {
+        if (timestamp > robotTime)
+        {
+            robotTime = timestamp;
+            robotTimeSeenNanos = clock.nanoTime();
+        }
+    }
 
+    /**
+     * Fill in a response from a JSON body.
+     */
+    private void decode(Response r, HttpBody body) throws IOException
+    {
+        if (r instanceof LazyResponse)
+        {
+            // keep the bytes, fields are decoded when asked for
+            ((LazyResponse)r).setBody(body.array(), 0, body.length());
+        }
+        else if (r instanceof StreamingResponse)
+        {
+            // decode straight into the response, no intermediate Map
+            JsonParser parser = jsonFactory.createJsonParser(body.array(), 0, body.length());
+            try
+            {
+                ((StreamingResponse)r).readFrom(parser);
+            }
+            finally
+            {
+                parser.close();
+            }
+        }
+        else
+        {
+            // map it to a Java Map
+            Map<String, Object> data = mapper.readValue(body.array(), 0, body.length(), Map.class);
+            r.setData(data);
+        }
+    }
+
+    /**
+     * @return latency, throughput and error counts of every path used
+     */
+    public CommunicationMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return the transport carrying the requests
+     */
+    public Transport getTransport()
+    {
+        return transport;
+    }
+
+    /**
+     * Close all connections to the robot.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (ownExecutor != null)
+                ownExecutor.shutdown();
+        }
+        transport.close();
+    }
 
+}
@@ -0,0 +1,16 @@
+/**
+ * Decides the wheel speeds of one robot from its latest pose. A fleet calls
+ * the controller of each robot once per control period, never from two
+ * threads at the same time, so a controller may keep plain state.
+ */
+public interface RobotController
+{
+    /**
+     * Compute the next drive command.
+     * @param pose x, y and heading of the robot now, in meters and radians
+     * @param lr the localization the pose is based on
+     * @param drive set its speeds to the command to send
+     * @return false when the robot has arrived and should stop
+     */
+    boolean update(double[] pose, LocalizationResponse lr, DifferentialDriveRequest drive);
+}
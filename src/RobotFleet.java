@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives many robots from one JVM with a fixed number of threads.
+ *
+ * Every robot is a RobotSession with its own communication, controller and
+ * metrics. Instead of a blocking loop per robot, the fleet runs each
+ * session's tick on a shared scheduled thread pool once per control period,
+ * with the robots' start times spread evenly over the period. A tick spends
+ * most of its time waiting on a local round trip, so a handful of threads
+ * serves dozens of robots: threads * period / round trip ticks can be in
+ * flight at once. When that is exceeded ticks run late, they never pile up,
+ * since a periodic task is not started again before its last run is done.
+ *
+ * The asynchronous calls of the robots' communication run on the same pool.
+ */
+public class RobotFleet
+{
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final long periodNanos;
+    private final List<RobotSession> sessions = new ArrayList<RobotSession>();
+    private boolean started;
+
+    /**
+     * @param threads number of threads shared by all robots
+     * @param periodMillis time between two ticks of one robot
+     */
+    public RobotFleet(int threads, long periodMillis)
+    {
+        this.periodNanos = periodMillis * 1000000;
+
+        scheduler = new ScheduledThreadPoolExecutor(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable)
+            {
+                Thread t = new Thread(runnable, "robot-fleet-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Drive a path with a number of robots, each on a LokarriaStandInServer
+     * of its own, or with robots that are already running.
+     * @param args a path file, then either the number of stand-in robots
+     *             or one host:port per robot, e.g. 127.0.0.1:50000;
+     *             --threads=n and --period=ms change the defaults of 4 and 20
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String pathFile = "./input/Path-from-bed.json";
+        int threads = 4;
+        long period = 20;
+        int standIns = 16;
+        List<String> addresses = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            if (arg.startsWith("--threads="))
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            else if (arg.startsWith("--period="))
+                period = Long.parseLong(arg.substring("--period=".length()));
+            else if (arg.indexOf(':') > 0)
+                addresses.add(arg);
+            else if (i == 0)
+                pathFile = arg;
+            else
+                standIns = Integer.parseInt(arg);
+        }
+
+        List<LokarriaStandInServer> servers = new ArrayList<LokarriaStandInServer>();
+        if (addresses.isEmpty())
+        {
+            for (int i = 0; i < standIns; i++)
+            {
+                LokarriaStandInServer server = new LokarriaStandInServer(0);
+                server.getRobot().placeAtStartOf(pathFile);
+                server.start();
+                servers.add(server);
+                addresses.add("127.0.0.1:" + server.getPort());
+            }
+        }
+
+        PathPreprocessor preprocessor = new PathPreprocessor();
+        RobotFleet fleet = new RobotFleet(threads, period);
+        for (String address : addresses)
+        {
+            int colon = address.lastIndexOf(':');
+            String host = address.substring(0, colon);
+            if (!host.startsWith("http://"))
+                host = "http://" + host;
+            int port = Integer.parseInt(address.substring(colon + 1));
+
+            fleet.add(address, new RobotCommunication(host, port, 1),
+                    PathFollower.load(pathFile, 1, preprocessor));
+        }
+        System.out.println(preprocessor.report());
+
+        System.out.println(addresses.size() + " robots, " + threads + " threads, "
+                + period + " ms period");
+
+        fleet.start();
+        fleet.awaitAll();
+
+        System.out.println(fleet.report());
+        System.out.println("Live threads: " + Thread.activeCount());
+
+        fleet.close();
+        for (LokarriaStandInServer server : servers)
+            server.stop();
+    }
+
+    /**
+     * Add a robot. Its communication's asynchronous calls will run on the
+     * fleet's threads, so it must not have made any yet.
+     * @param name shown in reports, e.g. host:port
+     * @param robotcomm communication with the robot, owned by the fleet from now
+     * @param controller decides the wheel speeds
+     * @return the session of the robot
+     */
+    public synchronized RobotSession add(String name, RobotCommunication robotcomm,
+                                         RobotController controller)
+    {
+        if (started)
+            throw new IllegalStateException("Fleet already started");
+
+        robotcomm.setExecutor(scheduler);
+        RobotSession session = new RobotSession(name, robotcomm, controller);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Start the control loops of all robots.
+     */
+    public synchronized void start()
+    {
+        if (started)
+            throw new IllegalStateException("Fleet already started");
+        started = true;
+
+        int n = sessions.size();
+        for (int i = 0; i < n; i++)
+        {
+            final RobotSession session = sessions.get(i);
+            session.setSchedule(scheduler.scheduleAtFixedRate(new Runnable()
+            {
+                public void run()
+                {
+                    session.tick();
+                }
+            }, periodNanos * i / n, periodNanos, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Wait until every robot has arrived or failed.
+     */
+    public void awaitAll()
+    {
+        for (RobotSession session : getSessions())
+        {
+            try
+            {
+                session.getCompletion().join();
+            }
+            catch (RuntimeException e)
+            {
+                // failed or cancelled, the session keeps the reason
+            }
+        }
+    }
+
+    /**
+     * @return completes when every robot has arrived or failed
+     */
+    public CompletableFuture<Void> getCompletion()
+    {
+        List<RobotSession> all = getSessions();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[all.size()];
+        for (int i = 0; i < futures.length; i++)
+            futures[i] = all.get(i).getCompletion();
+        return CompletableFuture.allOf(futures);
+    }
+
+    public synchronized List<RobotSession> getSessions()
+    {
+        return new ArrayList<RobotSession>(sessions);
+    }
+
+    /**
+     * @return one line per robot, then the metrics of each robot
+     */
+    public String report()
+    {
+        StringBuilder sb = new StringBuilder(String.format("%-22s %-9s %7s %7s %6s %8s",
+                "robot", "state", "ticks", "sent", "fails", "seconds"));
+        List<RobotSession> all = getSessions();
+        for (RobotSession session : all)
+            sb.append('\n').append(session);
+
+        for (RobotSession session : all)
+        {
+            sb.append("\n\n").append(session.getName()).append('\n');
+            sb.append(session.getRobotCommunication().getMetrics().report());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stop all control loops and close the robots' communication.
+     */
+    public void close()
+    {
+        for (RobotSession session : getSessions())
+            session.cancel();
+
+        scheduler.shutdown();
+        try
+        {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for (RobotSession session : getSessions())
+            session.getRobotCommunication().close();
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One robot of a RobotFleet: its communication, its controller and the
+ * state of its control loop. The fleet runs tick() once per period on one
+ * of its shared threads; a tick reads the localization, asks the
+ * controller for wheel speeds and sends them if they changed.
+ *
+ * The session ends when the controller says the robot arrived, or fails
+ * after too many failed ticks in a row. Either way the robot is told to
+ * stop; after a failure the stop is tried again on the following ticks
+ * until it gets through or the robot counts as unreachable.
+ */
+public class RobotSession
+{
+    private static final double EPSILON = 0.01;
+    private static final int MAX_FAILURES = 20;
+    private static final int MAX_STOP_ATTEMPTS = 50;
+
+    private final String name;
+    private final RobotCommunication robotcomm;
+    private final RobotController controller;
+    private final CompletableFuture<RobotSession> completion = new CompletableFuture<RobotSession>();
+
+    // only touched by the tick that is running
+    private final LocalizationResponse lr = new LazyLocalizationResponse();
+    private final DifferentialDriveRequest drive = new DifferentialDriveRequest();
+    private final double[] pose = new double[3];
+    private double sentLinear = Double.NaN;
+    private double sentAngular = Double.NaN;
+    private int failuresInRow;
+    private boolean stopping;
+    private int stopAttempts;
+
+    private volatile ScheduledFuture<?> schedule;
+    private volatile long ticks;
+    private volatile long commandsSent;
+    private volatile long failures;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private volatile Exception lastError;
+
+    /**
+     * @param name shown in reports, e.g. host:port
+     * @param robotcomm communication with the robot
+     * @param controller decides the wheel speeds
+     */
+    public RobotSession(String name, RobotCommunication robotcomm, RobotController controller)
+    {
+        this.name = name;
+        this.robotcomm = robotcomm;
+        this.controller = controller;
+    }
+
+    /**
+     * Run one iteration of the control loop. Called by the fleet.
+     */
+    void tick()
+    {
+        if (completion.isDone())
+            return;
+
+        if (stopping)
+        {
+            stop();
+            return;
+        }
+
+        if (ticks == 0)
+            startNanos = System.nanoTime();
+        ticks++;
+
+        boolean running;
+        try
+        {
+            robotcomm.getResponse(lr);
+
+            if (!robotcomm.getPoseAtNow(pose))
+            {
+                pose[0] = lr.getX();
+                pose[1] = lr.getY();
+                pose[2] = lr.getHeadingAngle();
+            }
+
+            running = controller.update(pose, lr, drive);
+            send(!running);
+            failuresInRow = 0;
+        }
+        catch (Exception e)
+        {
+            failures++;
+            lastError = e;
+            if (++failuresInRow < MAX_FAILURES)
+                return;
+            running = false;
+        }
+
+        if (!running)
+            finish();
+    }
+
+    private void send(boolean stop) throws Exception
+    {
+        if (stop)
+        {
+            drive.setLinearSpeed(0);
+            drive.setAngularSpeed(0);
+        }
+
+        double linear = drive.getLinearSpeed();
+        double angular = drive.getAngularSpeed();
+
+        // small changes are not worth sending
+        if (DriveCommandChannel.isSameCommand(linear, angular, sentLinear, sentAngular, EPSILON))
+            return;
+
+        int rc = robotcomm.putRequest(drive);
+        if (rc >= 400)
+            throw new IOException("Drive command failed with response code " + rc);
+
+        sentLinear = linear;
+        sentAngular = angular;
+        commandsSent++;
+    }
+
+    private void finish()
+    {
+        stopNanos = System.nanoTime();
+
+        if (failuresInRow == 0)
+        {
+            completion.complete(this);
+            unschedule();
+        }
+        else
+        {
+            // a failed command may still have reached the robot, so the
+            // stop is sent even if the last known command was a stop
+            sentLinear = Double.NaN;
+            stopping = true;
+            stop();
+        }
+    }
+
+    // one attempt to stop the robot after a failure, the next tick tries again
+    private void stop()
+    {
+        try
+        {
+            send(true);
+        }
+        catch (Exception e)
+        {
+            if (++stopAttempts < MAX_STOP_ATTEMPTS)
+                return;
+            System.err.println(name + ": could not stop the robot: " + e);
+        }
+
+        completion.completeExceptionally(lastError);
+        unschedule();
+    }
+
+    private void unschedule()
+    {
+        ScheduledFuture<?> s = schedule;
+        if (s != null)
+            s.cancel(false);
+    }
+
+    void setSchedule(ScheduledFuture<?> schedule)
+    {
+        this.schedule = schedule;
+        if (completion.isDone())
+            schedule.cancel(false);
+    }
+
+    /**
+     * Stop the control loop without waiting for the robot to arrive.
+     */
+    void cancel()
+    {
+        ScheduledFuture<?> s = schedule;
+        if (s != null)
+            s.cancel(false);
+        if (!completion.isDone())
+            stopNanos = System.nanoTime();
+        completion.cancel(false);
+    }
+
+    /**
+     * @return completes with this session when the robot arrived, or
+     *         exceptionally with the last error when it could not be reached
+     */
+    public CompletableFuture<RobotSession> getCompletion()
+    {
+        return completion;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public RobotCommunication getRobotCommunication()
+    {
+        return robotcomm;
+    }
+
+    public RobotController getController()
+    {
+        return controller;
+    }
+
+    public long getTicks()
+    {
+        return ticks;
+    }
+
+    public long getCommandsSent()
+    {
+        return commandsSent;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public Exception getLastError()
+    {
+        return lastError;
+    }
+
+    /**
+     * @return milliseconds from the first tick to arrival, or until now
+     */
+    public long getElapsedMillis()
+    {
+        if (ticks == 0)
+            return 0;
+        long end = completion.isDone() ? stopNanos : System.nanoTime();
+        return (end - startNanos) / 1000000;
+    }
+
+    /**
+     * @return running, arrived, failed or cancelled
+     */
+    public String getState()
+    {
+        if (!completion.isDone())
+            return "running";
+        if (completion.isCancelled())
+            return "cancelled";
+        return completion.isCompletedExceptionally() ? "failed" : "arrived";
+    }
+
+    public String toString()
+    {
+        return String.format("%-22s %-9s %7d %7d %6d %8.1f  %s", name, getState(), ticks,
+                commandsSent, failures, getElapsedMillis() / 1000.0,
+                lastError == null ? "" : lastError.toString());
+    }
+}
@@ -1,8 +1,6 @@
 import java.io.*;
 import java.util.*;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * TestRobotinterfaces to the (real or virtual) robot over a network connection.
  * It uses Java -> JSON -> HttpRequest -> Network -> DssHost32 ->
@@ -13,19 +11,29 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class RummelTheRobustRobot {
 
+    private static final double RECOVERY_DISTANCE = 0.5;  // meters off the path
+    private static final double RECOVERY_AHEAD = 5;       // meters of path searched ahead
+    private static final double RECOVERY_BEHIND = 1;      // and behind
+
     private RobotCommunication robotcomm;  // communication drivers
+    private DriveCommandChannel driveChannel;
+    private AdaptivePollingScheduler pollScheduler;
+    private boolean lockstep;      // wait for every command to be sent
+    private double commandedLinear;
+    private double commandedAngular;
     private double robotAngle;
     private double nextPositionAngle;
     private String host;
     private int port;
-    private LinkedList<Position> pathQueue;
+    private String pathFile = "./input/Path-from-bed.json";
+    private ArcLengthPath path;
+    private PathSpatialIndex pathIndex;
+    private int recoveries;
     private Date startTime;
     private boolean isTimeStarted;
 
     /**
-     * Create a RummelRobot connected to host "host" at port "port" and
-     * initialize a LinkedList later to be used in run()-method and
-     * setRobotPath()-method.
+     * Create a RummelRobot connected to host "host" at port "port".
      *
      * @param host normally http://127.0.0.1
      * @param port normally 50000
@@ -34,101 +42,235 @@ public class RummelTheRobustRobot {
 
         this.host = host;
         this.port = port;
-        this.pathQueue = new LinkedList<>();
+    }
+
+    /**
+     * Create a RummelRobot that talks to the robot through an existing
+     * communication object, e.g. one backed by a simulator.
+     *
+     * @param robotcomm communication with the robot
+     * @param pathFile the path to follow
+     */
+    public RummelTheRobustRobot(RobotCommunication robotcomm, String pathFile) {
+
+        this.robotcomm = robotcomm;
+        this.pathFile = pathFile;
     }
 
     /**
      * This simple main program creates a RummelRobot, the fastest robot-type
      * there is. Then it calls the run-method.
-     * @param args not used
+     * @param args optionally a path file, --simulate to drive an in-process
+     *             simulated robot instead of the one at port 50000, and
+     *             --record=file to record the session for SessionLog
      * @throws Exception not caught
      */
     public static void main(String[] args) throws Exception {
 
+        String pathFile = "./input/Path-from-bed.json";
+        boolean simulate = false;
+        String recordFile = null;
+
+        for (String arg : args) {
+            if (arg.equals("--simulate")) {
+                simulate = true;
+            } else if (arg.startsWith("--record=")) {
+                recordFile = arg.substring("--record=".length());
+            } else {
+                pathFile = arg;
+            }
+        }
+
         System.out.println("Creating RummelRobot");
-        RummelTheRobustRobot robot = new RummelTheRobustRobot("http://127.0.0.1", 50000);
+        RummelTheRobustRobot robot;
+
+        if (simulate) {
+
+            SimulatedRobot simulator = new SimulatedRobot();
+            simulator.placeAtStartOf(pathFile);
+            SimulatedTransport transport = new SimulatedTransport(simulator, 10);
+            RobotCommunication robotcomm = new RobotCommunication(transport);
+            robotcomm.setTimeSource(transport.getTimeSource());
+            robot = new RummelTheRobustRobot(robotcomm, pathFile);
+
+            // the simulated robot moves on while the loop waits to poll, so
+            // each command has to reach it before the loop starts waiting
+            robot.pollScheduler = new AdaptivePollingScheduler(
+                    transport.getTimeSource());
+            robot.lockstep = true;
+        } else {
+
+            robot = new RummelTheRobustRobot(new RobotCommunication(
+                    "http://127.0.0.1", 50000, 2), pathFile);
+        }
+
+        SessionRecorder recorder = null;
+        if (recordFile != null) {
+            recorder = new SessionRecorder(recordFile);
+            robot.robotcomm.setRecorder(recorder);
+        }
+
         robot.run();
+
+        if (recorder != null) {
+            recorder.close();
+            System.out.println("Recorded " + recorder.getRecordCount()
+                    + " requests to " + recordFile);
+        }
     }
 
     /**
      *  This run-method creates the communication with the server and reads
      *  from a path file which will be the path for the RummelRobot to follow.
      *  It creates the necessary positions, sets a start time, a
-     *  lookAheadDistance and start a do-while-loop.
-     *
-     *  The loop gets the RummelRobot's angle and the angle to the next
-     *  position in the path from a queue. It then compares the distance from
-     *  the RummelRobot to the next position and checks with the hardcoded
-     *  lookAheadDistance and sees if it's more or less. If it's less than
-     *  the lookAheadDistance then it loops and does the same thing until it
-     *  finds a position that is further away than the lookAheadDistance.
+     *  lookAheadDistance and start a do-while-loop. Before that it warms
+     *  up connections, codecs and geometry code, so the loop starts at full
+     *  speed.
      *
-     *  Then it moves towards that position by using moveRobot() and keeps
-     *  searching for positions further away than the lookAheadDistance and
-     *  keeps updating the directions.
+     *  The loop gets the RummelRobot's angle and finds the point of the
+     *  path closest to it. From there it looks up the first position of the
+     *  path that is further away than the lookAheadDistance, skipping the
+     *  positions that are too little further along the path by their arc
+     *  length. Then it moves towards that position by using moveRobot()
+     *  and keeps updating the directions, until it is near the last point
+     *  of the path.
      * @throws Exception DifferentialDriveRequest-Exception
      */
     private void run() throws Exception {
 
-        double[] position;
-        robotcomm = new RobotCommunication(host, port);
-        pathQueue = SetRobotPath("./input/Path-from-bed.json");
-        LocalizationResponse lr = new LocalizationResponse();
+        if (robotcomm == null) {
+            robotcomm = new RobotCommunication(host, port, 2);
+        }
+        driveChannel = new DriveCommandChannel(robotcomm, 0.01, 250);
+
+        // get connections, class loading and the JIT out of the way
+        // before the timer starts
+        WarmUp warmUp = new WarmUp(robotcomm);
+        warmUp.openConnections(2);
+        warmUp.exerciseCodecs(10000);
+        warmUp.exerciseGeometry(20000);
+        long pathStart = System.nanoTime();
+        path = SetRobotPath(pathFile);
+        warmUp.record("path", pathStart);
+        warmUp.exerciseRoundTrips(20);
+        System.out.println(warmUp.report());
+
+        LocalizationResponse lr = new LazyLocalizationResponse();
+        if (pollScheduler == null) {
+            pollScheduler = new AdaptivePollingScheduler();
+        }
 
-        Position goToPosition = pathQueue.peekFirst();
-        Position robotPosition;
+        Position goToPosition = new Position(0, 0);
+        Position robotPosition = new Position(0, 0);
+        int last = path.size() - 1;
+        int next = 0;
         double lookAheadDistance = 1;
+        long startRobotTime = -1;
+        double[] poseNow = new double[3];
         isTimeStarted = false;
 
         do {
 
+            if (lockstep) {
+                driveChannel.flush();
+            }
+
+            // poll only as often as the current motion needs. The read is
+            // not prefetched: a response fetched while acting on the last
+            // one would be a whole poll interval old by the time it is used,
+            // and the interval is never shorter than the round trip anyway
+            pollScheduler.awaitNextPoll();
             robotcomm.getResponse(lr);
-            robotAngle = lr.getHeadingAngle();
-            position = lr.getPosition();
+            pollScheduler.pollCompleted();
+
+            if (startRobotTime < 0) {
+                startRobotTime = lr.getTimestamp();
+            }
 
-            robotPosition = new Position(position);
+            // steer from where the robot is now, not where it was measured
+            if (robotcomm.getPoseAtNow(poseNow)) {
 
-            if (robotPosition.getDistanceTo(goToPosition) <
-                    lookAheadDistance) {
+                robotAngle = poseNow[2];
+                robotPosition.set(poseNow[0], poseNow[1]);
+            } else {
 
-                goToPosition = pathQueue.poll();
+                robotAngle = lr.getHeadingAngle();
+                robotPosition.set(lr.getX(), lr.getY());
+            }
+
+            // the first point at least lookAheadDistance away, found by
+            // the arc length instead of walking the path point by point
+            next = path.lookAheadIndex(robotPosition.getX(),
+                    robotPosition.getY(), lookAheadDistance);
+
+            // pushed off course or the localization jumped: find the path
+            // again near the progress made, not on a later part of it
+            if (path.getCursorDistance() > RECOVERY_DISTANCE) {
+
+                double progress = path.getCursorArcLength();
+                int nearest = pathIndex.nearest(robotPosition.getX(),
+                        robotPosition.getY(),
+                        path.indexAt(progress - RECOVERY_BEHIND),
+                        path.indexAfter(progress + RECOVERY_AHEAD));
+
+                goToPosition.set(path.getX(nearest), path.getY(nearest));
+                if (robotPosition.getDistanceTo(goToPosition)
+                        < path.getCursorDistance() - 0.1) {
+
+                    path.setCursor(path.getArcLength(nearest));
+                    next = path.lookAheadIndex(robotPosition.getX(),
+                            robotPosition.getY(), lookAheadDistance);
+                    recoveries++;
+                }
+            }
+            goToPosition.set(path.getX(next), path.getY(next));
 
-            } else if (robotPosition.getDistanceTo(goToPosition)
+            if (robotPosition.getDistanceTo(goToPosition)
                     > lookAheadDistance) {
 
                 nextPositionAngle = robotPosition.getBearingTo(goToPosition);
                 moveRobot();
             }
 
-        } while (!pathQueue.isEmpty() && pathQueue.peekLast().getDistanceTo
-                (robotPosition) > 0.1);
+            // pure pursuit curvature of the arc to the look-ahead point
+            double offAngle = Math.abs(Math.IEEEremainder(
+                    nextPositionAngle - robotAngle, 2 * Math.PI));
+            pollScheduler.update(commandedLinear, commandedAngular,
+                    2 * Math.sin(Math.min(offAngle, Math.PI / 2))
+                    / lookAheadDistance);
+
+        } while (next < last || robotPosition.getDistanceTo(goToPosition)
+                > lookAheadDistance);
 
         setWheelSpeed(0, 0);
+        driveChannel.close();
         Date stopTime = new Date();
 
         System.out.println("Robot is within 1 meter from the last point in" +
                 " the path. Seconds passed: " + ((stopTime.getTime()
-                -startTime.getTime())/1000));
+                -startTime.getTime())/1000) + " (" + (stopTime.getTime()
+                -startTime.getTime()) + " ms), robot time passed: "
+                + ((lr.getTimestamp() - startRobotTime) / 1000.0) + " s");
+        System.out.println("Drive commands: " + driveChannel);
+        System.out.println("Localization polling: " + pollScheduler);
+        System.out.println("Found the path again " + recoveries + " times");
+        System.out.println(robotcomm.getMetrics().report());
+
+        robotcomm.close();
     }
 
     /**
-     * Sets the wheel speed of the RummelRobot and makes a request to the
-     * server.
+     * Sets the wheel speed of the RummelRobot. The command is handed to the
+     * drive channel which sends it to the server unless it is replaced by a
+     * newer command first or hardly differs from the last one sent.
      * @param angularSpeed the turning speed of the RummelRobot.
      * @param linearSpeed the speed straight forward of the RummelRobot.
      */
     private void setWheelSpeed(double angularSpeed,double linearSpeed) {
 
-        DifferentialDriveRequest dr = new DifferentialDriveRequest();
-
-        dr.setAngularSpeed(angularSpeed);
-        dr.setLinearSpeed(linearSpeed);
-
-        try {
-            robotcomm.putRequest(dr);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        commandedLinear = linearSpeed;
+        commandedAngular = angularSpeed;
+        driveChannel.submit(linearSpeed, angularSpeed);
     }
 
     /**
@@ -172,52 +314,26 @@ public class RummelTheRobustRobot {
     }
 
     /**
-     * This method extracts each position in the given path file and puts
-     * them in a linkedlist ordered like a queue.
+     * This method reads each position in the given path file, thins them
+     * out with a PathPreprocessor and parameterizes the path by its arc
+     * length. It also builds the spatial
+     * index used to find the path again when the RummelRobot loses it.
      * @param filename the path file.
-     * @return a linkedlist as a queue with all the positions of the path
-     * file in order first to last.
+     * @return the path, or null if the file could not be read.
      */
-    private LinkedList SetRobotPath(String filename) {
-
-        Position[] path;
-        File pathFile = new File(filename);
+    private ArcLengthPath SetRobotPath(String filename) {
 
         try {
 
-            BufferedReader in = new BufferedReader(new InputStreamReader
-                    (new FileInputStream(pathFile)));
-
-            ObjectMapper mapper = new ObjectMapper();
-
-            Collection<Map<String, Object>> data =
-                    (Collection<Map<String, Object>>) mapper.readValue
-                            (in, Collection.class);
-
-            int nPoints = data.size();
-            path = new Position[nPoints];
-            int index = 0;
-
-            for (Map<String, Object> point : data) {
-
-                Map<String, Object> pose =
-                        (Map<String, Object>) point.get("Pose");
-                Map<String, Object> aPosition =
-                        (Map<String, Object>) pose.get("Position");
-
-                double x = (Double) aPosition.get("X");
-                double y = (Double) aPosition.get("Y");
-
-                path[index] = new Position(x, y);
-                pathQueue.add(new Position(x, y));
-
-                index++;
-            }
+            PathPreprocessor preprocessor = new PathPreprocessor();
+            PoseArray poses = preprocessor.process(PoseArray.load(filename));
+            System.out.println(preprocessor.report());
+            pathIndex = new PathSpatialIndex(poses.copyX(), poses.copyY());
 
             System.out.println("Found path. First position is: ");
-            System.out.println(path[0].getX() + ":" + path[0].getY());
+            System.out.println(poses.getX(0) + ":" + poses.getY(0));
 
-            return pathQueue;
+            return new ArcLengthPath(poses.copyX(), poses.copyY());
 
         } catch (FileNotFoundException e) {
 
@@ -234,4 +350,3 @@ public class RummelTheRobustRobot {
         return null;
     }
 }
-
@@ -0,0 +1,409 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Follows a path with as few requests as possible by driving its long,
+ * nearly straight runs with a single translate command each.
+ *
+ * When the path is loaded, every run of points that stays within a
+ * tolerance of the chord from its first to its last point and is at least
+ * a minimum length long becomes a segment. On the way, the robot is
+ * steered differentially by a PathFollower. Near the start of a segment it
+ * turns on the spot to face along the segment, then sends one
+ * TranslationRequest for the rest of it. During the translation the
+ * localization is only polled at a low rate, to see when the robot has
+ * arrived or strayed too far from the line, in which case differential
+ * steering takes over again.
+ */
+public class SegmentExecutor
+{
+    private static final int FOLLOW = 0;
+    private static final int ALIGN = 1;
+    private static final int TRANSLATE = 2;
+
+    private static final double EPSILON = 0.01;
+    private static final double ENTRY_RADIUS = 0.3;       // start aligning this close to a segment
+    private static final double ALIGN_TOLERANCE = 0.05;   // radians off the segment direction
+    private static final double MAX_CROSS_TRACK = 0.3;    // meters off the line before giving up
+
+    private final RobotCommunication robotcomm;
+    private final PathFollower follower;
+    private final double maxSpeed;
+    private final double minLength;
+
+    private final int[] segmentStarts;
+    private final int[] segmentEnds;
+    private final int segments;
+
+    private long monitorMillis = 250;
+    private TimeSource time = TimeSource.SYSTEM;
+    private AdaptivePollingScheduler pollScheduler = new AdaptivePollingScheduler();
+
+    private final DifferentialDriveRequest drive = new DifferentialDriveRequest();
+    private final TranslationRequest translation = new TranslationRequest();
+    private double sentLinear = Double.NaN;
+    private double sentAngular = Double.NaN;
+
+    private int translations;
+    private int aborted;
+    private double translatedDistance;
+
+    /**
+     * Find the straight segments of the path.
+     * @param robotcomm communication with the robot
+     * @param follower path to follow, steers between segments
+     * @param tolerance meters a point of a segment may be off its chord
+     * @param minLength shortest segment worth a translation, in meters
+     * @param maxSpeed speed of the translations, m/s
+     */
+    public SegmentExecutor(RobotCommunication robotcomm, PathFollower follower,
+                           double tolerance, double minLength, double maxSpeed)
+    {
+        this.robotcomm = robotcomm;
+        this.follower = follower;
+        this.maxSpeed = maxSpeed;
+        this.minLength = minLength;
+
+        int n = follower.size();
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int count = 0;
+
+        int i = 0;
+        while (i < n - 1)
+        {
+            int j = i + 1;
+            while (j + 1 < n && isStraight(i, j + 1, tolerance))
+                j++;
+
+            if (distance(i, j) >= minLength)
+            {
+                starts[count] = i;
+                ends[count] = j;
+                count++;
+                i = j;
+            }
+            else
+            {
+                i++;
+            }
+        }
+
+        segmentStarts = Arrays.copyOf(starts, count);
+        segmentEnds = Arrays.copyOf(ends, count);
+        segments = count;
+    }
+
+    /**
+     * Follow a path file, on the robot at port 50000 or on a simulated one.
+     * @param args optionally a path file, and --simulate
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String pathFile = "./input/Path-to-bed.json";
+        boolean simulate = false;
+
+        for (String arg : args)
+        {
+            if (arg.equals("--simulate"))
+                simulate = true;
+            else
+                pathFile = arg;
+        }
+
+        RobotCommunication robotcomm;
+        SimulatedTransport transport = null;
+        if (simulate)
+        {
+            SimulatedRobot simulator = new SimulatedRobot();
+            simulator.placeAtStartOf(pathFile);
+            transport = new SimulatedTransport(simulator, 10);
+            robotcomm = new RobotCommunication(transport);
+            robotcomm.setTimeSource(transport.getTimeSource());
+        }
+        else
+        {
+            robotcomm = new RobotCommunication("http://127.0.0.1", 50000, 2);
+        }
+
+        PathPreprocessor preprocessor = new PathPreprocessor();
+        SegmentExecutor executor = new SegmentExecutor(robotcomm,
+                PathFollower.load(pathFile, 1, preprocessor), 0.05, 1.5, 1.0);
+        System.out.println(preprocessor.report());
+        if (simulate)
+            executor.setTimeSource(transport.getTimeSource());
+
+        System.out.println(executor.getSegmentCount() + " straight segments in "
+                + executor.follower.size() + " path points");
+
+        long start = System.currentTimeMillis();
+        long robotTime = executor.run();
+
+        System.out.println("Arrived after " + (System.currentTimeMillis() - start)
+                + " ms, robot time " + robotTime / 1000.0 + " s");
+        System.out.println(executor);
+        System.out.println(robotcomm.getMetrics().report());
+        robotcomm.close();
+    }
+
+    /**
+     * Drive the path to its end.
+     * @return robot time the drive took, in milliseconds
+     * @throws Exception if the robot can not be reached
+     */
+    public long run() throws Exception
+    {
+        LocalizationResponse lr = new LazyLocalizationResponse();
+        double[] pose = new double[3];
+        int segment = 0;
+        int state = FOLLOW;
+        long startTime = -1;
+        long translationDeadline = 0;
+
+        while (true)
+        {
+            if (state == TRANSLATE)
+            {
+                time.sleep(monitorMillis * 1000000);
+                robotcomm.getResponse(lr);
+            }
+            else
+            {
+                pollScheduler.awaitNextPoll();
+                robotcomm.getResponse(lr);
+                pollScheduler.pollCompleted();
+            }
+
+            long now = lr.getTimestamp();
+            if (startTime < 0)
+                startTime = now;
+
+            // the pose predictor does not know about translations
+            if (state == TRANSLATE || !robotcomm.getPoseAtNow(pose))
+            {
+                pose[0] = lr.getX();
+                pose[1] = lr.getY();
+                pose[2] = lr.getHeadingAngle();
+            }
+
+            if (state == FOLLOW)
+            {
+                // segments the differential steering has already passed
+                while (segment < segments && follower.getNext() > segmentEnds[segment])
+                    segment++;
+            }
+
+            int a = 0;
+            int b = 0;
+            double length = 0;
+            double dx = 0;
+            double dy = 0;
+            double along = 0;
+            double cross = 0;
+            if (segment < segments)
+            {
+                a = segmentStarts[segment];
+                b = segmentEnds[segment];
+                length = distance(a, b);
+                dx = (follower.getX(b) - follower.getX(a)) / length;
+                dy = (follower.getY(b) - follower.getY(a)) / length;
+                along = (pose[0] - follower.getX(a)) * dx + (pose[1] - follower.getY(a)) * dy;
+                cross = (pose[1] - follower.getY(a)) * dx - (pose[0] - follower.getX(a)) * dy;
+            }
+
+            if (state == FOLLOW)
+            {
+                // on the line, with enough of the segment left to be worth it
+                if (segment < segments && Math.abs(cross) < ENTRY_RADIUS
+                        && along > -ENTRY_RADIUS && length - along > minLength / 2)
+                {
+                    state = ALIGN;
+                }
+                else
+                {
+                    if (!steer(pose, lr))
+                        break;
+                    continue;
+                }
+            }
+
+            if (state == ALIGN)
+            {
+                double error = Math.IEEEremainder(Math.atan2(dy, dx) - pose[2], 2 * Math.PI);
+
+                if (Math.abs(error) < ALIGN_TOLERANCE)
+                {
+                    double remaining = length - along;
+                    translation.setDistance(remaining);
+                    translation.setMaxSpeed(maxSpeed);
+
+                    int rc = robotcomm.putRequest(translation);
+                    if (rc >= 400)
+                        throw new IOException("Translation failed with response code " + rc);
+
+                    translations++;
+                    translatedDistance += remaining;
+                    translationDeadline = now + (long)(1500 * remaining / maxSpeed) + 1000;
+                    sentLinear = Double.NaN;
+                    state = TRANSLATE;
+                }
+                else
+                {
+                    // turn on the spot, slower when nearly aligned
+                    send(0, Math.max(-1, Math.min(1, 2 * error)));
+                    pollScheduler.update(0, 2 * error, 0);
+                }
+            }
+            else if (Math.abs(cross) > MAX_CROSS_TRACK)
+            {
+                // strayed off the line, steer back differentially
+                aborted++;
+                follower.setNext(closestPoint(a, b, pose));
+                segment++;
+                state = FOLLOW;
+            }
+            else if (length - along < 0.05 || now > translationDeadline)
+            {
+                follower.setNext(b);
+                segment++;
+                state = FOLLOW;
+            }
+        }
+
+        send(0, 0);
+        return lr.getTimestamp() - startTime;
+    }
+
+    // steer differentially towards the path, false once arrived
+    private boolean steer(double[] pose, LocalizationResponse lr) throws Exception
+    {
+        if (!follower.update(pose, lr, drive))
+            return false;
+
+        send(drive.getLinearSpeed(), drive.getAngularSpeed());
+        pollScheduler.update(drive.getLinearSpeed(), drive.getAngularSpeed(), 0);
+        return true;
+    }
+
+    private int closestPoint(int a, int b, double[] pose)
+    {
+        int best = a;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = a; i <= b; i++)
+        {
+            double d = Math.hypot(follower.getX(i) - pose[0], follower.getY(i) - pose[1]);
+            if (d < bestDistance)
+            {
+                best = i;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    // send wheel speeds unless they hardly differ from the last ones sent
+    private void send(double linear, double angular) throws Exception
+    {
+        if (DriveCommandChannel.isSameCommand(linear, angular, sentLinear, sentAngular, EPSILON))
+            return;
+
+        drive.setLinearSpeed(linear);
+        drive.setAngularSpeed(angular);
+        int rc = robotcomm.putRequest(drive);
+
+        // a rejected command is sent again on the next tick
+        if (rc >= 400)
+        {
+            System.err.println("Drive command failed with response code " + rc);
+            return;
+        }
+        sentLinear = linear;
+        sentAngular = angular;
+    }
+
+    // true if every point from a to b is near the chord and moves along it
+    private boolean isStraight(int a, int b, double tolerance)
+    {
+        double length = distance(a, b);
+        if (length < 1e-6)
+            return true;
+
+        double dx = (follower.getX(b) - follower.getX(a)) / length;
+        double dy = (follower.getY(b) - follower.getY(a)) / length;
+        double lastAlong = 0;
+
+        for (int i = a + 1; i < b; i++)
+        {
+            double px = follower.getX(i) - follower.getX(a);
+            double py = follower.getY(i) - follower.getY(a);
+            double along = px * dx + py * dy;
+
+            if (Math.abs(py * dx - px * dy) > tolerance || along < lastAlong - tolerance)
+                return false;
+            lastAlong = Math.max(lastAlong, along);
+        }
+        return true;
+    }
+
+    private double distance(int a, int b)
+    {
+        return Math.hypot(follower.getX(b) - follower.getX(a), follower.getY(b) - follower.getY(a));
+    }
+
+    /**
+     * @param scheduler decides when to poll while steering differentially
+     */
+    public void setPollScheduler(AdaptivePollingScheduler scheduler)
+    {
+        this.pollScheduler = scheduler;
+    }
+
+    /**
+     * Pace the polls by another clock, e.g. that of a simulated robot. Also
+     * gives the executor a new poll scheduler on that clock.
+     * @param time the clock to wait on
+     */
+    public void setTimeSource(TimeSource time)
+    {
+        this.time = time;
+        this.pollScheduler = new AdaptivePollingScheduler(time);
+    }
+
+    /**
+     * @param millis time between polls during a translation
+     */
+    public void setMonitorInterval(long millis)
+    {
+        this.monitorMillis = millis;
+    }
+
+    public int getSegmentCount()
+    {
+        return segments;
+    }
+
+    /**
+     * @param i a segment
+     * @return index of its first path point
+     */
+    public int getSegmentStart(int i)
+    {
+        return segmentStarts[i];
+    }
+
+    /**
+     * @param i a segment
+     * @return index of its last path point
+     */
+    public int getSegmentEnd(int i)
+    {
+        return segmentEnds[i];
+    }
+
+    public String toString()
+    {
+        return String.format("%d translations over %.1f m, %d aborted, %s", translations,
+                translatedDistance, aborted, pollScheduler);
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * One reading of all the robot's sensors: localization, laser echoes,
+ * battery and inclinometer. The four Lokarria paths are fetched in parallel,
+ * so a full read costs as much as the slowest of them rather than the sum.
+ *
+ * A snapshot is immutable. The robot time stamp of each part is kept, so the
+ * caller can see how far apart in robot time the readings were taken.
+ */
+public class SensorSnapshot
+{
+    // the responses are only read into while a snapshot is being taken
+    private static final ObjectPool<LocalizationResponse> localizations =
+            new ObjectPool<LocalizationResponse>(new ObjectPool.Factory<LocalizationResponse>()
+            {
+                public LocalizationResponse create()
+                {
+                    return new LocalizationResponse();
+                }
+            }, 8);
+    private static final ObjectPool<LaserEchoesResponse> echoReadings =
+            new ObjectPool<LaserEchoesResponse>(new ObjectPool.Factory<LaserEchoesResponse>()
+            {
+                public LaserEchoesResponse create()
+                {
+                    return new LaserEchoesResponse();
+                }
+            }, 8);
+    private static final ObjectPool<BatteryResponse> batteryReadings =
+            new ObjectPool<BatteryResponse>(new ObjectPool.Factory<BatteryResponse>()
+            {
+                public BatteryResponse create()
+                {
+                    return new BatteryResponse();
+                }
+            }, 8);
+    private static final ObjectPool<InclinometerResponse> inclinometerReadings =
+            new ObjectPool<InclinometerResponse>(new ObjectPool.Factory<InclinometerResponse>()
+            {
+                public InclinometerResponse create()
+                {
+                    return new InclinometerResponse();
+                }
+            }, 8);
+
+    private final double[] position;
+    private final double[] orientation;
+    private final double headingAngle;
+    private final long localizationTime;
+
+    private final double[] echoes;
+    private final long echoesTime;
+
+    private final double batteryRemaining;
+    private final long batteryTime;
+
+    private final double pitchAngle;
+    private final double rollAngle;
+    private final long inclinometerTime;
+
+    private SensorSnapshot(LocalizationResponse lr, LaserEchoesResponse ler,
+                           BatteryResponse br, InclinometerResponse ir)
+    {
+        position = lr.getPosition();
+        orientation = lr.getOrientation();
+        headingAngle = lr.getHeadingAngle();
+        localizationTime = lr.getTimestamp();
+
+        echoes = ler.getEchoes();
+        echoesTime = ler.getTimestamp();
+
+        batteryRemaining = br.getRemaining();
+        batteryTime = br.getTimestamp();
+
+        pitchAngle = ir.getPitchAngle();
+        rollAngle = ir.getRollAngle();
+        inclinometerTime = ir.getTimestamp();
+    }
+
+    /**
+     * Read all sensors in parallel and wait for the result.
+     * @param robotcomm connection to the robot
+     * @return the snapshot
+     * @throws Exception the first failure of any of the reads
+     */
+    public static SensorSnapshot fetch(RobotCommunication robotcomm) throws Exception
+    {
+        try
+        {
+            return fetchAsync(robotcomm).join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof Exception)
+                throw (Exception)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Start reading all sensors in parallel.
+     * @param robotcomm connection to the robot
+     * @return future snapshot, completed when the slowest read is done
+     */
+    public static CompletableFuture<SensorSnapshot> fetchAsync(RobotCommunication robotcomm)
+    {
+        final CompletableFuture<LocalizationResponse> lr =
+                robotcomm.getResponseAsync(localizations.borrow());
+        final CompletableFuture<LaserEchoesResponse> ler =
+                robotcomm.getResponseAsync(echoReadings.borrow());
+        final CompletableFuture<BatteryResponse> br =
+                robotcomm.getResponseAsync(batteryReadings.borrow());
+        final CompletableFuture<InclinometerResponse> ir =
+                robotcomm.getResponseAsync(inclinometerReadings.borrow());
+
+        return CompletableFuture.allOf(lr, ler, br, ir).thenApply(new Function<Void, SensorSnapshot>()
+        {
+            public SensorSnapshot apply(Void done)
+            {
+                SensorSnapshot snapshot = new SensorSnapshot(lr.join(), ler.join(), br.join(), ir.join());
+
+                // after a failed read the responses are left to the garbage collector
+                localizations.release(lr.join());
+                echoReadings.release(ler.join());
+                batteryReadings.release(br.join());
+                inclinometerReadings.release(ir.join());
+                return snapshot;
+            }
+        });
+    }
+
+    public double[] getPosition()
+    {
+        return position.clone();
+    }
+
+    public double[] getOrientation()
+    {
+        return orientation.clone();
+    }
+
+    public double getHeadingAngle()
+    {
+        return headingAngle;
+    }
+
+    public double[] getEchoes()
+    {
+        return echoes.clone();
+    }
+
+    public double getBatteryRemaining()
+    {
+        return batteryRemaining;
+    }
+
+    public double getPitchAngle()
+    {
+        return pitchAngle;
+    }
+
+    public double getRollAngle()
+    {
+        return rollAngle;
+    }
+
+    public long getLocalizationTime()
+    {
+        return localizationTime;
+    }
+
+    public long getEchoesTime()
+    {
+        return echoesTime;
+    }
+
+    public long getBatteryTime()
+    {
+        return batteryTime;
+    }
+
+    public long getInclinometerTime()
+    {
+        return inclinometerTime;
+    }
+
+    /**
+     * @return robot time of the newest reading in the snapshot
+     */
+    public long getTimestamp()
+    {
+        return Math.max(Math.max(localizationTime, echoesTime),
+                Math.max(batteryTime, inclinometerTime));
+    }
+
+    /**
+     * @return robot time between the oldest and the newest reading
+     */
+    public long getTimeSpread()
+    {
+        long oldest = Math.min(Math.min(localizationTime, echoesTime),
+                Math.min(batteryTime, inclinometerTime));
+        return getTimestamp() - oldest;
+    }
+
+    /**
+     * @param tolerance largest allowed time spread, in robot time units
+     * @return true if all readings were taken within the tolerance
+     */
+    public boolean isAligned(long tolerance)
+    {
+        return getTimeSpread() <= tolerance;
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A session log written by SessionRecorder, mapped read-only into memory.
+ * Records are read through cursors, which decode in place and do not copy a
+ * payload until asked to, so a log of any size can be scanned without
+ * holding it on the heap.
+ */
+public class SessionLog
+{
+    private final ByteBuffer buffer;
+
+    /**
+     * Map a session log.
+     * @param filename
+     * @throws IOException if the file is not a session log
+     */
+    public SessionLog(String filename) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try
+        {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally
+        {
+            file.close();
+        }
+
+        if (buffer.limit() < 8 || buffer.getInt(0) != SessionRecorder.MAGIC)
+            throw new IOException(filename + " is not a session log");
+        if (buffer.getInt(4) != SessionRecorder.VERSION)
+            throw new IOException(filename + " has an unknown session log version");
+    }
+
+    /**
+     * @return a cursor positioned before the first record
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Print a summary of a session log, then replay its localization data
+     * through a RobotCommunication as fast as possible.
+     * @param args the log file
+     * @throws Exception not caught
+     */
+    public static void main(String[] args) throws Exception
+    {
+        SessionLog log = new SessionLog(args[0]);
+
+        Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+        long records = 0;
+        long lastNanos = 0;
+
+        Cursor c = log.cursor();
+        while (c.next())
+        {
+            long[] n = counts.get(c.getPath());
+            if (n == null)
+                counts.put(c.getPath(), n = new long[2]);
+            n[c.isGet() ? 0 : 1]++;
+
+            records++;
+            lastNanos = c.getNanos();
+        }
+
+        System.out.println(records + " records over " + (lastNanos / 1e9) + " s");
+        for (Map.Entry<String, long[]> e : counts.entrySet())
+            System.out.println(e.getKey() + ": " + e.getValue()[0] + " GET, "
+                    + e.getValue()[1] + " POST");
+
+        RobotCommunication robotcomm = new RobotCommunication(new ReplayTransport(log, 0));
+        LocalizationResponse lr = new LocalizationResponse();
+        long poses = 0;
+        double distance = 0;
+        double lastX = Double.NaN;
+        double lastY = Double.NaN;
+
+        long start = System.nanoTime();
+        try
+        {
+            while (true)
+            {
+                robotcomm.getResponse(lr);
+                if (poses > 0)
+                    distance += Math.hypot(lr.getX() - lastX, lr.getY() - lastY);
+                lastX = lr.getX();
+                lastY = lr.getY();
+                poses++;
+            }
+        }
+        catch (EOFException e)
+        {
+            // end of the recorded localization data
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.println("Replayed " + poses + " poses, " + distance + " m driven, in "
+                + (nanos / 1000000) + " ms");
+    }
+
+    /**
+     * Walks the records of the log in order.
+     */
+    public class Cursor
+    {
+        private int position = 8;       // after magic and version
+        private byte kind;
+        private long nanos;
+        private int status;
+        private int pathStart;
+        private int pathLength;
+        private int payloadStart;
+        private int payloadLength;
+
+        /**
+         * Move to the next record.
+         * @return false at the end of the log
+         */
+        public boolean next()
+        {
+            if (position >= buffer.limit())
+                return false;
+
+            kind = buffer.get(position);
+            if (kind == SessionRecorder.END)
+                return false;
+
+            nanos = buffer.getLong(position + 1);
+            status = buffer.getInt(position + 9);
+            pathLength = buffer.getShort(position + 13);
+            pathStart = position + 15;
+            payloadLength = buffer.getInt(pathStart + pathLength);
+            payloadStart = pathStart + pathLength + 4;
+
+            position = payloadStart + payloadLength;
+            return true;
+        }
+
+        public boolean isGet()
+        {
+            return kind == SessionRecorder.GET;
+        }
+
+        public boolean isPost()
+        {
+            return kind == SessionRecorder.POST;
+        }
+
+        /**
+         * @return nanoseconds since the recording started
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        public String getPath()
+        {
+            char[] chars = new char[pathLength];
+            for (int i = 0; i < pathLength; i++)
+                chars[i] = (char)buffer.get(pathStart + i);
+            return new String(chars);
+        }
+
+        /**
+         * Compare the path of the record without creating a String.
+         */
+        public boolean pathEquals(String path)
+        {
+            if (path.length() != pathLength)
+                return false;
+
+            for (int i = 0; i < pathLength; i++)
+            {
+                if (buffer.get(pathStart + i) != path.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        public int getPayloadLength()
+        {
+            return payloadLength;
+        }
+
+        /**
+         * Copy the payload into a body buffer, replacing its content.
+         */
+        public void copyPayload(HttpBody body)
+        {
+            body.clear();
+            body.ensureCapacity(payloadLength);
+
+            ByteBuffer view = buffer.duplicate();
+            view.position(payloadStart);
+            view.get(body.array(), 0, payloadLength);
+            body.setLength(payloadLength);
+        }
+    }
+}
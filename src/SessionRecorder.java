@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records every request and response passing through a RobotCommunication
+ * into an append-only binary file, written through memory-mapped regions so
+ * that recording costs a memory copy and no system call per record.
+ *
+ * The file starts with a magic number and a version, then holds records of
+ * the form: kind (byte, GET or POST), nanoseconds since the recording started
+ * (long), HTTP status (int), path length (short) and ASCII path, payload
+ * length (int) and payload. A kind of END, which is also what the unused
+ * zero-filled tail of the last region reads as, ends the log. See SessionLog
+ * for reading it back.
+ */
+public class SessionRecorder
+{
+    static final int MAGIC = 0x4c4b5352;      // "LKSR"
+    static final int VERSION = 1;
+    static final byte END = 0;
+    static final byte GET = 1;
+    static final byte POST = 2;
+
+    private static final int REGION_SIZE = 8 << 20;
+    private static final int HEADER_SIZE = 1 + 8 + 4 + 2 + 4;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private final long startNanos;
+    private long records;
+
+    /**
+     * Create or overwrite a session log.
+     * @param filename
+     * @throws IOException
+     */
+    public SessionRecorder(String filename) throws IOException
+    {
+        file = new RandomAccessFile(filename, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        map(0, REGION_SIZE);
+        region.putInt(MAGIC);
+        region.putInt(VERSION);
+
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a response read from the robot.
+     */
+    public void recordGet(String path, int status, byte[] data, int offset, int length)
+            throws IOException
+    {
+        append(GET, path, status, data, offset, length);
+    }
+
+    /**
+     * Record a request sent to the robot.
+     */
+    public void recordPost(String path, int status, byte[] data, int offset, int length)
+            throws IOException
+    {
+        append(POST, path, status, data, offset, length);
+    }
+
+    public synchronized long getRecordCount()
+    {
+        return records;
+    }
+
+    /**
+     * Write the end marker and flush everything to disk.
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException
+    {
+        ensureRoom(1);
+        region.put(END);
+        region.force();
+        channel.close();
+        file.close();
+    }
+
+    private synchronized void append(byte kind, String path, int status,
+                                     byte[] data, int offset, int length) throws IOException
+    {
+        long nanos = System.nanoTime() - startNanos;
+
+        // one byte extra, so there is always room for the end marker
+        ensureRoom(HEADER_SIZE + path.length() + length + 1);
+
+        region.put(kind);
+        region.putLong(nanos);
+        region.putInt(status);
+        region.putShort((short)path.length());
+        for (int i = 0; i < path.length(); i++)
+            region.put((byte)path.charAt(i));
+        region.putInt(length);
+        region.put(data, offset, length);
+
+        records++;
+    }
+
+    private void ensureRoom(int size) throws IOException
+    {
+        if (region.remaining() >= size)
+            return;
+
+        // the next region starts where this one is used up, the zero tail is overwritten
+        map(regionStart + region.position(), Math.max(REGION_SIZE, size));
+    }
+
+    private void map(long start, int size) throws IOException
+    {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        regionStart = start;
+    }
+}
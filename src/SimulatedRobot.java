@@ -0,0 +1,368 @@
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A pure Java stand-in for a robot behind Lokarria. It answers the same
+ * paths with the same JSON as the MRDS simulator and moves like a
+ * differential drive robot, without acceleration limits or wheel slip.
+ *
+ * The robot lives in an empty rectangular room; the laser sees its walls.
+ * Time only passes when step is called, so the simulation runs as fast as
+ * the caller drives it. All methods are synchronized.
+ */
+public class SimulatedRobot
+{
+    public static final int OK = 200;
+    public static final int NO_CONTENT = 204;
+    public static final int BAD_REQUEST = 400;
+    public static final int NOT_FOUND = 404;
+
+    // height of the robot's origin above the floor, as in the recorded paths
+    private static final double Z = 0.0776;
+
+    // laser geometry of the simulated Robulab
+    private static final double LASER_START = -Math.PI * 0.75;
+    private static final double LASER_END = Math.PI * 0.75;
+    private static final double LASER_INCREMENT = Math.PI / 360;
+    private static final double LASER_OFFSET = 0.15;    // in front of the centre
+    private static final double LASER_RANGE = 20.0;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final double roomHalfWidth;
+
+    private double x;
+    private double y;
+    private double heading;
+    private long timeMillis;
+    private double stepRemainder;       // fractions of a millisecond not yet counted
+
+    private double linearSpeed;
+    private double angularSpeed;
+
+    // a translate command in progress, a negative speed drives backwards
+    private double translateRemaining;
+    private double translateSpeed;
+
+    /**
+     * A robot at the origin, facing along the X axis, in a 40 x 40 m room.
+     */
+    public SimulatedRobot()
+    {
+        this(20.0);
+    }
+
+    /**
+     * @param roomHalfWidth distance from the origin to each wall
+     */
+    public SimulatedRobot(double roomHalfWidth)
+    {
+        this.roomHalfWidth = roomHalfWidth;
+    }
+
+    /**
+     * Put the robot somewhere, standing still.
+     * @param x
+     * @param y
+     * @param heading angle from the X axis, radians
+     */
+    public synchronized void placeAt(double x, double y, double heading)
+    {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        linearSpeed = 0;
+        angularSpeed = 0;
+        translateRemaining = 0;
+    }
+
+    /**
+     * Put the robot at the first pose of a recorded path file, standing still.
+     * @param filename path file, a JSON array of {"Pose":...} objects
+     * @throws IOException if the file can not be read
+     */
+    public void placeAtStartOf(String filename) throws IOException
+    {
+        double[] orientation = new double[4];
+        double[] position = new double[3];
+
+        JsonParser parser = jsonFactory.createJsonParser(new File(filename));
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("Expected a JSON array in " + filename);
+            LokarriaJson.startObject(parser);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("Pose".equals(name))
+                    LokarriaJson.readPose(parser, orientation, position);
+                else
+                    parser.skipChildren();
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+
+        double w = orientation[0];
+        double qx = orientation[1];
+        double qy = orientation[2];
+        double qz = orientation[3];
+        placeAt(position[0], position[1],
+                Math.atan2(2 * (w * qz + qx * qy), 1 - 2 * (qy * qy + qz * qz)));
+    }
+
+    /**
+     * Let time pass and move the robot accordingly.
+     * @param seconds
+     */
+    public synchronized void step(double seconds)
+    {
+        if (seconds <= 0)
+            return;
+
+        double millis = seconds * 1000 + stepRemainder;
+        timeMillis += (long)millis;
+        stepRemainder = millis - (long)millis;
+
+        if (translateRemaining > 0)
+        {
+            double d = Math.min(translateRemaining, Math.abs(translateSpeed) * seconds);
+            translateRemaining -= d;
+            if (translateSpeed < 0)
+                d = -d;
+
+            x += d * Math.cos(heading);
+            y += d * Math.sin(heading);
+            return;
+        }
+
+        double v = linearSpeed;
+        double w = angularSpeed;
+        double dTheta = w * seconds;
+
+        if (Math.abs(dTheta) < 1e-9)
+        {
+            x += v * seconds * Math.cos(heading);
+            y += v * seconds * Math.sin(heading);
+        }
+        else
+        {
+            // exact arc of radius v / w
+            double r = v / w;
+            x += r * (Math.sin(heading + dTheta) - Math.sin(heading));
+            y -= r * (Math.cos(heading + dTheta) - Math.cos(heading));
+        }
+        heading = normalize(heading + dTheta);
+    }
+
+    /**
+     * Answer a GET on a Lokarria path.
+     * @param path path of the resource
+     * @param body receives the JSON body
+     * @return HTTP status code
+     */
+    public synchronized int get(String path, HttpBody body)
+    {
+        body.clear();
+
+        if ("/lokarria/localization".equals(path))
+        {
+            writePose(body, "{\"Pose\":", x, y, heading);
+            body.appendAscii(",\"Status\":4");
+        }
+        else if ("/lokarria/laser/echoes".equals(path))
+        {
+            writeEchoes(body);
+        }
+        else if ("/lokarria/laser/properties".equals(path))
+        {
+            writePose(body, "{\"Pose\":", LASER_OFFSET, 0, 0);
+            body.appendAscii(",\"StartAngle\":");
+            body.appendNumber(LASER_START);
+            body.appendAscii(",\"EndAngle\":");
+            body.appendNumber(LASER_END);
+            body.appendAscii(",\"AngleIncrement\":");
+            body.appendNumber(LASER_INCREMENT);
+        }
+        else if ("/lokarria/battery".equals(path))
+        {
+            body.appendAscii("{\"Remaining\":100,\"Status\":\"0\"");
+        }
+        else if ("/lokarria/inclinometer".equals(path))
+        {
+            body.appendAscii("{\"PitchAngle\":\"0\",\"RollAngle\":\"0\"");
+        }
+        else
+        {
+            return NOT_FOUND;
+        }
+
+        body.appendAscii(",\"TimeStamp\":");
+        body.appendAscii(Long.toString(timeMillis));
+        body.appendAscii("}");
+        return OK;
+    }
+
+    /**
+     * Answer a POST on a Lokarria path.
+     * @param path path of the resource
+     * @param data buffer holding the JSON body
+     * @param offset start of the body in data
+     * @param length number of bytes in the body
+     * @return HTTP status code
+     */
+    public synchronized int post(String path, byte[] data, int offset, int length)
+    {
+        boolean drive = "/lokarria/differentialdrive".equals(path);
+        boolean translate = "/lokarria/translate".equals(path);
+        if (!drive && !translate)
+            return NOT_FOUND;
+
+        double first = 0;
+        double second = 0;
+        try
+        {
+            JsonParser parser = jsonFactory.createJsonParser(data, offset, length);
+            try
+            {
+                if (parser.nextToken() != JsonToken.START_OBJECT)
+                    return BAD_REQUEST;
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+
+                    if ("TargetLinearSpeed".equals(name) || "Distance".equals(name))
+                        first = parser.getDoubleValue();
+                    else if ("TargetAngularSpeed".equals(name) || "MaxSpeed".equals(name))
+                        second = parser.getDoubleValue();
+                    else
+                        parser.skipChildren();
+                }
+            }
+            finally
+            {
+                parser.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return BAD_REQUEST;
+        }
+
+        if (drive)
+        {
+            linearSpeed = first;
+            angularSpeed = second;
+            translateRemaining = 0;
+        }
+        else
+        {
+            // a translation replaces the wheel speeds until it is done
+            linearSpeed = 0;
+            angularSpeed = 0;
+            translateRemaining = Math.abs(first);
+            translateSpeed = first < 0 ? -Math.abs(second) : Math.abs(second);
+        }
+        return NO_CONTENT;
+    }
+
+    public synchronized double getX()
+    {
+        return x;
+    }
+
+    public synchronized double getY()
+    {
+        return y;
+    }
+
+    public synchronized double getHeading()
+    {
+        return heading;
+    }
+
+    public synchronized long getTimeMillis()
+    {
+        return timeMillis;
+    }
+
+    /**
+     * @return simulation time with the fractions of a millisecond not yet counted
+     */
+    public synchronized long getTimeNanos()
+    {
+        return timeMillis * 1000000 + (long)(stepRemainder * 1000000);
+    }
+
+    private void writePose(HttpBody body, String prefix, double px, double py, double angle)
+    {
+        body.appendAscii(prefix);
+        body.appendAscii("{\"Orientation\":{\"W\":");
+        body.appendNumber(Math.cos(angle / 2));
+        body.appendAscii(",\"X\":0.0,\"Y\":0.0,\"Z\":");
+        body.appendNumber(Math.sin(angle / 2));
+        body.appendAscii("},\"Position\":{\"X\":");
+        body.appendNumber(px);
+        body.appendAscii(",\"Y\":");
+        body.appendNumber(py);
+        body.appendAscii(",\"Z\":");
+        body.appendNumber(Z);
+        body.appendAscii("}}");
+    }
+
+    private void writeEchoes(HttpBody body)
+    {
+        double lx = x + LASER_OFFSET * Math.cos(heading);
+        double ly = y + LASER_OFFSET * Math.sin(heading);
+
+        body.appendAscii("{\"Echoes\":[");
+        int n = (int)Math.round((LASER_END - LASER_START) / LASER_INCREMENT) + 1;
+        for (int i = 0; i < n; i++)
+        {
+            if (i > 0)
+                body.appendAscii(",");
+            body.appendNumber(distanceToWall(lx, ly, heading + LASER_START + i * LASER_INCREMENT));
+        }
+        body.appendAscii("]");
+    }
+
+    // distance along a ray from (px, py) to the walls of the room
+    private double distanceToWall(double px, double py, double angle)
+    {
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+        double d = LASER_RANGE;
+
+        if (dx > 1e-12)
+            d = Math.min(d, (roomHalfWidth - px) / dx);
+        else if (dx < -1e-12)
+            d = Math.min(d, (-roomHalfWidth - px) / dx);
+
+        if (dy > 1e-12)
+            d = Math.min(d, (roomHalfWidth - py) / dy);
+        else if (dy < -1e-12)
+            d = Math.min(d, (-roomHalfWidth - py) / dy);
+
+        return Math.max(0, d);
+    }
+
+    private static double normalize(double angle)
+    {
+        while (angle > Math.PI)
+            angle -= 2 * Math.PI;
+        while (angle < -Math.PI)
+            angle += 2 * Math.PI;
+        return angle;
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.IOException;
+
+/**
+ * A transport that talks to a SimulatedRobot in the same process instead of
+ * a Lokarria web server. Every request advances the simulation clock by a
+ * fixed step, as if each round trip took that long, so a controller runs
+ * through a whole path as fast as it can compute.
+ *
+ * A controller that waits between requests should wait on getTimeSource,
+ * so that the robot moves on while it waits.
+ */
+public class SimulatedTransport implements Transport
+{
+    private final SimulatedRobot robot;
+    private final double stepSeconds;
+
+    /**
+     * @param robot the simulated robot
+     * @param stepMillis robot time that passes per request
+     */
+    public SimulatedTransport(SimulatedRobot robot, double stepMillis)
+    {
+        this.robot = robot;
+        this.stepSeconds = stepMillis / 1000;
+    }
+
+    public int get(String path, HttpBody body) throws IOException
+    {
+        synchronized (robot)
+        {
+            robot.step(stepSeconds);
+            return robot.get(path, body);
+        }
+    }
+
+    public int post(String path, byte[] data, int offset, int length) throws IOException
+    {
+        synchronized (robot)
+        {
+            robot.step(stepSeconds);
+            return robot.post(path, data, offset, length);
+        }
+    }
+
+    public SimulatedRobot getRobot()
+    {
+        return robot;
+    }
+
+    /**
+     * @return the simulation clock, waiting on it steps the robot
+     */
+    public TimeSource getTimeSource()
+    {
+        return new TimeSource()
+        {
+            public long nanoTime()
+            {
+                return robot.getTimeNanos();
+            }
+
+            public void sleep(long nanos)
+            {
+                robot.step(nanos / 1e9);
+            }
+        };
+    }
+
+    public void close()
+    {
+    }
+}
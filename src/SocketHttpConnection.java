@@ -0,0 +1,131 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A persistent HTTP/1.1 connection over a plain socket with buffered
+ * streams. A deadline is applied as the socket timeout of every read that
+ * has to wait for the server. Writes are not bounded: a request is far
+ * smaller than the socket send buffer.
+ */
+public class SocketHttpConnection extends AbstractHttpConnection
+{
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Connect to a Lokarria web server.
+     * @param host host name or address, without scheme
+     * @param port normally 50000
+     * @throws IOException
+     */
+    public SocketHttpConnection(String host, int port) throws IOException
+    {
+        this(host, port, 0);
+    }
+
+    /**
+     * Connect to a Lokarria web server.
+     * @param host host name or address, without scheme
+     * @param port normally 50000
+     * @param connectTimeoutMillis how long the connection setup may take, 0 for no limit
+     * @throws DeadlineExceededException if the connection setup takes longer
+     * @throws IOException
+     */
+    public SocketHttpConnection(String host, int port, int connectTimeoutMillis) throws IOException
+    {
+        super(host, port);
+
+        socket = new Socket();
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+        }
+        catch (SocketTimeoutException e)
+        {
+            socket.close();
+            throw new DeadlineExceededException("No connection to " + host + ":" + port
+                    + " within " + connectTimeoutMillis + " ms");
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        in = new BufferedInputStream(new TimedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    protected void write(byte[] b, int offset, int length) throws IOException
+    {
+        out.write(b, offset, length);
+    }
+
+    protected void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    protected int read() throws IOException
+    {
+        return in.read();
+    }
+
+    protected int read(byte[] b, int offset, int length) throws IOException
+    {
+        return in.read(b, offset, length);
+    }
+
+    protected void closeSocket() throws IOException
+    {
+        socket.close();
+    }
+
+    /**
+     * Sits under the buffer, so the timeout is only set for the reads that
+     * go to the socket.
+     */
+    private final class TimedInputStream extends FilterInputStream
+    {
+        TimedInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        public int read() throws IOException
+        {
+            socket.setSoTimeout(remainingMillis());
+            try
+            {
+                return in.read();
+            }
+            catch (SocketTimeoutException e)
+            {
+                throw new DeadlineExceededException("No response before the deadline");
+            }
+        }
+
+        public int read(byte[] b, int offset, int length) throws IOException
+        {
+            socket.setSoTimeout(remainingMillis());
+            try
+            {
+                return in.read(b, offset, length);
+            }
+            catch (SocketTimeoutException e)
+            {
+                throw new DeadlineExceededException("No response before the deadline");
+            }
+        }
+    }
+}
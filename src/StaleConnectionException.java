@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Thrown when a kept-alive connection turns out to have been closed by the
+ * server before it answered. Most likely the server closed it while it was
+ * idle and never saw the request, but that can not be told apart from a
+ * server that acted on the request and then closed the connection.
+ */
+public class StaleConnectionException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public StaleConnectionException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A response that can read itself straight from a JSON token stream into its
+ * own primitive fields. RobotCommunication uses this instead of building a
+ * Map for every response, so a read creates no intermediate objects.
+ */
+public interface StreamingResponse extends Response
+{
+    /**
+     * Read the response body, the parser is positioned before the first token.
+     * @param parser token stream of the body
+     * @throws IOException if the body is not what the resource should return
+     */
+    public void readFrom(JsonParser parser) throws IOException;
+}
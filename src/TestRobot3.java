@@ -5,11 +5,15 @@ import java.util.*;
 
 public class TestRobot3
 {
+    private static final double RECOVERY_DISTANCE = 1;  // meters off the path before looking for it
+    private static final int RECOVERY_WINDOW = 200;     // path points ahead to look at
+
     private double lookAheadDistance;
     private int port;
     private String host;
     private RobotCommunication robotcomm;
     private Position[] path;
+    private PathSpatialIndex pathIndex;
     Position robotPosition;
     private LinkedList<Position> pathQueue;
 
@@ -50,9 +54,10 @@ public class TestRobot3
         //path = SetRobotPath("./input/Path-from-bed.json");
 
         SetRobotMargins();
+        SetPathIndex();
 
         for(int i = 1 ; i < path.length - 1; i++){
-            MoveRobotToPosition(i);
+            i = MoveRobotToPosition(i);
             System.out.println("Steps left: " + (path.length - i));
         }
 
@@ -117,6 +122,19 @@ public class TestRobot3
         System.out.println("Look Ahead Distance: " + this.lookAheadDistance);
     }
 
+    private void SetPathIndex(){
+
+        double[] xs = new double[path.length];
+        double[] ys = new double[path.length];
+
+        for(int i = 0 ; i < path.length; i++){
+            xs[i] = path[i].getX();
+            ys[i] = path[i].getY();
+        }
+
+        pathIndex = new PathSpatialIndex(xs, ys);
+    }
+
     /**
      * Extract the robot heading from the response
      * @param lr
@@ -139,7 +157,14 @@ public class TestRobot3
         return new Position(coordinates[0], coordinates[1]);
     }
 
-    private void MoveRobotToPosition(int i) throws Exception{
+    /**
+     * Drive until the robot is near path point i
+     * @param i index of the path point
+     * @return index of the path point reached, further than i if the robot
+     *         was found further along the path after losing it
+     * @throws Exception not caught
+     */
+    private int MoveRobotToPosition(int i) throws Exception{
 
         LocalizationResponse lr = new LocalizationResponse();
 
@@ -147,10 +172,24 @@ public class TestRobot3
             robotcomm.getResponse(lr);
             robotPosition = getPosition(lr);
 
+            // pushed off course or the localization jumped: pick the path up
+            // again at the closest point ahead, never at an earlier part of it
+            if(robotPosition.getDistanceTo(path[i]) > RECOVERY_DISTANCE){
+                int nearest = pathIndex.nearest(robotPosition.getX(),
+                        robotPosition.getY(), i,
+                        Math.min(i + RECOVERY_WINDOW, path.length - 2));
+                if(nearest > i){
+                    System.out.println("Found the path again at step " + nearest);
+                    return nearest;
+                }
+            }
+
             MoveRobot(path[i+1], getHeadingAngle(lr));
 
             robotcomm.getResponse(lr);
         }while(getPosition(lr).getDistanceTo(path[i]) > lookAheadDistance);
+
+        return i;
     }
 
     private void MoveRobot(Position nextPosition, double robotHeading){
@@ -0,0 +1,37 @@
+/**
+ * The clock a control loop paces itself by: the local clock, or the clock
+ * of a simulated robot, which only moves when it is told to. Waiting on a
+ * simulated clock moves the simulation on instead of sleeping, so a
+ * simulated run keeps the timing of a real one and still runs as fast as
+ * it can compute.
+ */
+public interface TimeSource
+{
+    /**
+     * The local clock, waits by sleeping.
+     */
+    public static final TimeSource SYSTEM = new TimeSource()
+    {
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+
+        public void sleep(long nanos) throws InterruptedException
+        {
+            Thread.sleep(nanos / 1000000, (int)(nanos % 1000000));
+        }
+    };
+
+    /**
+     * @return the time in nanoseconds, only differences between two calls mean something
+     */
+    public long nanoTime();
+
+    /**
+     * Let time pass.
+     * @param nanos how long
+     * @throws InterruptedException
+     */
+    public void sleep(long nanos) throws InterruptedException;
+}
@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+/**
+ * A transport that can bound how long a call takes. The time left until the
+ * deadline is used as the connect and read timeout of the call, so a robot
+ * or network that stops answering costs at most that long.
+ */
+public interface TimedTransport extends Transport
+{
+    /**
+     * Perform a GET that must be answered before a deadline.
+     * @param path path of the resource
+     * @param body buffer that receives the response body
+     * @param deadline System.nanoTime() by which the response must have arrived
+     * @return HTTP status code
+     * @throws DeadlineExceededException if the deadline passes first
+     * @throws IOException
+     */
+    public int get(String path, HttpBody body, long deadline) throws IOException;
+
+    /**
+     * Perform a POST that must be answered before a deadline.
+     * @param path path of the resource
+     * @param data buffer holding the JSON body
+     * @param offset start of the body in data
+     * @param length number of bytes in the body
+     * @param deadline System.nanoTime() by which the response must have arrived
+     * @return HTTP status code
+     * @throws DeadlineExceededException if the deadline passes first
+     * @throws IOException
+     */
+    public int post(String path, byte[] data, int offset, int length, long deadline) throws IOException;
+}
@@ -1,33 +1,64 @@
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
-public class TranslationRequest implements Request
+public class TranslationRequest implements EncodableRequest
 {
-    private Map<String, Object> data;
+    // the JSON body with the two numbers left out
+    private static final byte[] DISTANCE =
+            "{\"Distance\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAX_SPEED =
+            ",\"MaxSpeed\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "}".getBytes(StandardCharsets.US_ASCII);
+
+    private double distance;
+    private double maxSpeed;
 
     public TranslationRequest()
     {
-        data = new HashMap<String, Object>();
-
-        data.put("Distance", 0);
-        data.put("MaxSpeed", 0);
+        setDistance(0);
+        setMaxSpeed(0);
     }
 
     public void setDistance(double distance)
     {
-        data.put("Distance", distance);
+        this.distance = distance;
     }
 
     public void setMaxSpeed(double maxSpeed)
     {
-        data.put("MaxSpeed", maxSpeed);
+        this.maxSpeed = maxSpeed;
+    }
+
+    public double getDistance()
+    {
+        return distance;
+    }
+
+    public double getMaxSpeed()
+    {
+        return maxSpeed;
     }
 
     public Map<String, Object> getData()
     {
+        Map<String, Object> data = new HashMap<String, Object>();
+
+        data.put("Distance", distance);
+        data.put("MaxSpeed", maxSpeed);
+
         return data;
     }
 
+    public void writeTo(HttpBody body)
+    {
+        body.append(DISTANCE, 0, DISTANCE.length);
+        body.appendNumber(distance);
+        body.append(MAX_SPEED, 0, MAX_SPEED.length);
+        body.appendNumber(maxSpeed);
+        body.append(END, 0, END.length);
+    }
+
     public String getPath()
     {
         return "/lokarria/translate";
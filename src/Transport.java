@@ -0,0 +1,36 @@
+import java.io.IOException;
+
+/**
+ * The wire underneath a RobotCommunication. A transport moves raw JSON bodies
+ * between the client and the Lokarria web server, it knows nothing about the
+ * requests and responses themselves.
+ *
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface Transport
+{
+    /**
+     * Perform a GET on a Lokarria path.
+     * @param path path of the resource, e.g. /lokarria/localization
+     * @param body buffer that receives the response body
+     * @return HTTP status code
+     * @throws IOException
+     */
+    public int get(String path, HttpBody body) throws IOException;
+
+    /**
+     * Perform a POST of a JSON body to a Lokarria path.
+     * @param path path of the resource, e.g. /lokarria/differentialdrive
+     * @param data buffer holding the JSON body
+     * @param offset start of the body in data
+     * @param length number of bytes in the body
+     * @return HTTP status code
+     * @throws IOException
+     */
+    public int post(String path, byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Release all connections held by the transport.
+     */
+    public void close();
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+/**
+ * The original transport, one java.net.URL connection per request. A
+ * deadline becomes the connect and read timeout of the connection.
+ */
+public class UrlConnectionTransport implements TimedTransport
+{
+    private String host;
+    private int port;
+
+    /**
+     * @param host normally http://127.0.0.1
+     * @param port normally 50000
+     */
+    public UrlConnectionTransport(String host, int port)
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+    public int get(String path, HttpBody body) throws IOException
+    {
+        return timedGet(path, body, 0);
+    }
+
+    public int get(String path, HttpBody body, long deadline) throws IOException
+    {
+        int timeout = DeadlineExceededException.millisUntil(deadline);
+        try
+        {
+            return timedGet(path, body, timeout);
+        }
+        catch (SocketTimeoutException e)
+        {
+            throw new DeadlineExceededException("No response from " + path + " before the deadline");
+        }
+    }
+
+    public int post(String path, byte[] data, int offset, int length) throws IOException
+    {
+        return timedPost(path, data, offset, length, 0);
+    }
+
+    public int post(String path, byte[] data, int offset, int length, long deadline) throws IOException
+    {
+        int timeout = DeadlineExceededException.millisUntil(deadline);
+        try
+        {
+            return timedPost(path, data, offset, length, timeout);
+        }
+        catch (SocketTimeoutException e)
+        {
+            throw new DeadlineExceededException("No response from " + path + " before the deadline");
+        }
+    }
+
+    // timeout in milliseconds, 0 for none
+    private int timedGet(String path, HttpBody body, int timeout) throws IOException
+    {
+        URL url = new URL(host + ":" + port + path);
+
+        // open a connection to the web server and then get the resulting data
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        InputStream in = connection.getInputStream();
+
+        body.clear();
+        body.readToEnd(in);
+        in.close();
+
+        return connection.getResponseCode();
+    }
+
+    private int timedPost(String path, byte[] data, int offset, int length, int timeout) throws IOException
+    {
+        URL url = new URL(host + ":" + port + path);
+
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+
+        connection.setDoOutput(true);
+
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setUseCaches (false);
+
+        // write it to the web server
+        OutputStream out = connection.getOutputStream();
+        out.write(data, offset, length);
+        out.close();
+
+        // wait for response code
+        return connection.getResponseCode();
+    }
+
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gets the slow first-time costs out of the way before a control loop
+ * starts: opening connections, loading and JIT-compiling the JSON codecs,
+ * the communication code and the geometry. Each step is timed, and
+ * report() tells how long the warm-up took and where the time went.
+ *
+ * The codecs and RobotCommunication are exercised against an in-process
+ * SimulatedRobot, so the same code gets hot without a single command
+ * reaching the real robot. Only localization is read from the real robot,
+ * which also gives the clock synchronization its first samples.
+ */
+public class WarmUp
+{
+    private final RobotCommunication robotcomm;
+    private final StringBuilder steps = new StringBuilder();
+    private final long startNanos = System.nanoTime();
+    private double sink;        // keeps the geometry from being optimized away
+
+    /**
+     * @param robotcomm communication with the real robot
+     */
+    public WarmUp(RobotCommunication robotcomm)
+    {
+        this.robotcomm = robotcomm;
+    }
+
+    /**
+     * Open persistent connections up front, if the transport keeps any.
+     * @param n number of connections
+     * @throws Exception if the robot can not be reached
+     */
+    public void openConnections(int n) throws Exception
+    {
+        long start = System.nanoTime();
+        Transport transport = robotcomm.getTransport();
+        if (transport instanceof HttpConnectionPool)
+            ((HttpConnectionPool)transport).prestart(n);
+        record("connections", start);
+    }
+
+    /**
+     * Run reads and drive commands through a RobotCommunication on a
+     * simulated robot, with the eager, lazy and Map based decoders.
+     * @param iterations number of read/command rounds, some 10000 get the JIT going
+     * @throws Exception not expected from the simulator
+     */
+    public void exerciseCodecs(int iterations) throws Exception
+    {
+        long start = System.nanoTime();
+
+        SimulatedRobot simulator = new SimulatedRobot();
+        RobotCommunication simulated = new RobotCommunication(new SimulatedTransport(simulator, 10));
+        LocalizationResponse eager = new LocalizationResponse();
+        LocalizationResponse lazy = new LazyLocalizationResponse();
+        DifferentialDriveRequest dr = new DifferentialDriveRequest();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            simulated.getResponse(lazy);
+            simulated.getResponse(eager);
+            dr.setLinearSpeed(0.5);
+            dr.setAngularSpeed(Math.sin(i * 0.01));
+            simulated.putRequest(dr);
+
+            // keep the robot in the room
+            if (i % 1000 == 999)
+                simulator.placeAt(0, 0, 0);
+        }
+
+        // the ObjectMapper of the Map based responses
+        simulated.getResponse(new BatteryResponse());
+        simulated.putRequest(new Request()
+        {
+            public Map<String, Object> getData()
+            {
+                return new HashMap<String, Object>();
+            }
+
+            public String getPath()
+            {
+                return "/lokarria/differentialdrive";
+            }
+        });
+        simulated.close();
+
+        record("codecs", start);
+    }
+
+    /**
+     * Run the quaternion and Position code the path followers use.
+     * @param iterations number of rounds
+     */
+    public void exerciseGeometry(int iterations)
+    {
+        long start = System.nanoTime();
+
+        Position target = new Position(1, 2);
+        Position p = new Position(0, 0);
+
+        for (int i = 0; i < iterations; i++)
+        {
+            double angle = i * 0.001;
+            double yaw = QuaternionMath.yaw(Math.cos(angle / 2), 0, 0, Math.sin(angle / 2));
+            p.set(Math.cos(angle), Math.sin(angle));
+            sink += yaw + p.getDistanceTo(target) + p.getBearingTo(target);
+        }
+
+        record("geometry", start);
+    }
+
+    /**
+     * Read the localization of the real robot a few times, so the
+     * connections, the robot's web server and the clock estimate are warm.
+     * @param n number of reads
+     * @throws Exception if the robot can not be reached
+     */
+    public void exerciseRoundTrips(int n) throws Exception
+    {
+        long start = System.nanoTime();
+
+        LocalizationResponse lr = new LazyLocalizationResponse();
+        for (int i = 0; i < n; i++)
+            robotcomm.getResponse(lr);
+
+        // the lap's metrics should not include the warm-up
+        robotcomm.getMetrics().reset();
+        record("round trips", start);
+    }
+
+    /**
+     * Add a step timed by the caller, e.g. loading the path.
+     * @param name shown in the report
+     * @param startNanos System.nanoTime() when the step started
+     */
+    public void record(String name, long startNanos)
+    {
+        if (steps.length() > 0)
+            steps.append(", ");
+        steps.append(name).append(' ').append((System.nanoTime() - startNanos) / 1000000).append(" ms");
+    }
+
+    /**
+     * @return total time and time of each step
+     */
+    public String report()
+    {
+        return "Warm-up " + (System.nanoTime() - startNanos) / 1000000 + " ms: " + steps;
+    }
+}